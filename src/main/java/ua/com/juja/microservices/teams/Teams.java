@@ -1,25 +1,40 @@
 package ua.com.juja.microservices.teams;
 
+import com.mongodb.MongoClientOptions;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
-import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.http.converter.HttpMessageConverter;
 import org.springframework.http.converter.StringHttpMessageConverter;
 import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
 import org.springframework.web.filter.CorsFilter;
+import ua.com.juja.microservices.teams.dao.impl.MongoCommandMetrics;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @SpringBootApplication
+@EnableScheduling
 public class Teams {
     public static void main(String[] args) {
         SpringApplication.run(Teams.class, args);
@@ -41,18 +56,86 @@ public class Teams {
     }
 
     @Bean
-    public RestTemplate restTemplate() {
-        RestTemplate restTemplate = new RestTemplate(httpRequestFactory());
+    public RestTemplate restTemplate(HttpClient httpClient) {
+        RestTemplate restTemplate = new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
         restTemplate.setMessageConverters(getHttpMessageConverters());
         return restTemplate;
     }
 
-    private ClientHttpRequestFactory httpRequestFactory() {
-        return new HttpComponentsClientHttpRequestFactory(httpClient());
+    @Bean(destroyMethod = "shutdown")
+    public PoolingHttpClientConnectionManager httpConnectionManager(
+            @Value("${keepers.http.maxTotal}") int maxTotal,
+            @Value("${keepers.http.maxPerRoute}") int maxPerRoute,
+            @Value("${keepers.http.validateAfterInactivityMs}") int validateAfterInactivityMs) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setValidateAfterInactivity(validateAfterInactivityMs);
+        return connectionManager;
     }
 
-    private HttpClient httpClient() {
-        return HttpClients.createDefault();
+    @Bean
+    public HttpClient httpClient(PoolingHttpClientConnectionManager connectionManager,
+                                 @Value("${keepers.http.connectTimeoutMs}") int connectTimeoutMs,
+                                 @Value("${keepers.http.readTimeoutMs}") int readTimeoutMs,
+                                 @Value("${keepers.http.poolLeaseTimeoutMs}") int poolLeaseTimeoutMs,
+                                 @Value("${keepers.http.keepAliveMs}") long keepAliveMs,
+                                 @Value("${keepers.http.idleEvictSeconds}") long idleEvictSeconds) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(readTimeoutMs)
+                .setConnectionRequestTimeout(poolLeaseTimeoutMs)
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy(keepAliveStrategy(keepAliveMs))
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEvictSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Bean
+    public PublicMetrics httpConnectionPoolMetrics(PoolingHttpClientConnectionManager connectionManager) {
+        return () -> {
+            PoolStats stats = connectionManager.getTotalStats();
+            return Arrays.asList(
+                    new Metric<>("keepers.http.pool.leased", stats.getLeased()),
+                    new Metric<>("keepers.http.pool.available", stats.getAvailable()),
+                    new Metric<>("keepers.http.pool.pending", stats.getPending()),
+                    new Metric<>("keepers.http.pool.max", stats.getMax()));
+        };
+    }
+
+    @Bean
+    public MongoCommandMetrics mongoCommandMetrics() {
+        return new MongoCommandMetrics();
+    }
+
+    @Bean
+    public MongoClientOptions mongoClientOptions(MongoCommandMetrics commandMetrics) {
+        return MongoClientOptions.builder()
+                .addCommandListener(commandMetrics)
+                .build();
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor activateTeamExecutor(@Value("${teams.activate.async.poolSize}") int poolSize,
+                                                       @Value("${teams.activate.async.queueCapacity}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("activate-team-");
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
+    }
+
+    private ConnectionKeepAliveStrategy keepAliveStrategy(long keepAliveMs) {
+        return (response, context) -> {
+            long serverKeepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return serverKeepAlive > 0 ? Math.min(serverKeepAlive, keepAliveMs) : keepAliveMs;
+        };
     }
 
     private List<HttpMessageConverter<?>> getHttpMessageConverters() {
@@ -1,21 +1,45 @@
 package ua.com.juja.microservices.teams.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import ua.com.juja.microservices.teams.entity.ActivateTeamsRequest;
+import ua.com.juja.microservices.teams.entity.DeactivateTeamsRequest;
 import ua.com.juja.microservices.teams.entity.Team;
+import ua.com.juja.microservices.teams.entity.TeamResult;
+import ua.com.juja.microservices.teams.entity.TeamsPage;
+import ua.com.juja.microservices.teams.entity.UserTeam;
+import ua.com.juja.microservices.teams.entity.UsersTeamsRequest;
 import ua.com.juja.microservices.teams.entity.impl.ActivateTeamRequest;
 import ua.com.juja.microservices.teams.entity.impl.DeactivateTeamRequest;
+import ua.com.juja.microservices.teams.service.ActiveTeamsCache;
+import ua.com.juja.microservices.teams.service.TeamHistoryService;
 import ua.com.juja.microservices.teams.service.TeamService;
+import ua.com.juja.microservices.teams.service.TeamsVersion;
 
 import javax.inject.Inject;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Ivan Shapovalov
@@ -28,6 +52,21 @@ public class TeamController {
     @Inject
     private TeamService teamService;
 
+    @Inject
+    private TeamHistoryService teamHistoryService;
+
+    @Inject
+    private TeamsVersion teamsVersion;
+
+    @Inject
+    private ActiveTeamsCache activeTeamsCache;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Value("${teams.getAllTeams.streaming.enabled}")
+    private boolean streamingEnabled;
+
     @PostMapping(value = "${teams.endpoint.activateTeam}", consumes = "application/json", produces = "application/json")
     public ResponseEntity<?> activateTeam(@Valid @RequestBody ActivateTeamRequest request) {
         log.debug("Received 'Activate team' request {}", request);
@@ -46,9 +85,55 @@ public class TeamController {
         return ResponseEntity.ok(team);
     }
 
+    @PostMapping(value = "${teams.endpoint.activateTeams}", consumes = "application/json", produces = "application/json")
+    public ResponseEntity<?> activateTeams(@Valid @RequestBody ActivateTeamsRequest request) {
+        log.debug("Received 'Activate teams' request {}", request);
+        List<TeamResult> results = teamService.activateTeams(request);
+        log.debug("Request 'Activate teams' returned results {}", results);
+        log.info("Teams activated. Requests number: {}", results.size());
+        return ResponseEntity.ok(results);
+    }
+
+    @PutMapping(value = "${teams.endpoint.deactivateTeams}", consumes = "application/json", produces = "application/json")
+    public ResponseEntity<?> deactivateTeams(@Valid @RequestBody DeactivateTeamsRequest request) {
+        log.debug("Received 'Deactivate teams' request {}", request);
+        List<TeamResult> results = teamService.deactivateTeams(request);
+        log.debug("Request 'Deactivate teams' returned results {}", results);
+        log.info("Teams deactivated. Requests number: {}", results.size());
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Returns a page of active teams if size or token is given. Otherwise returns all active teams, streamed if
+     * streaming is enabled, which takes precedence over active teams cache, then from the cache if it is enabled.
+     */
     @GetMapping(value = "${teams.endpoint.getAllTeams}", produces = "application/json")
-    public ResponseEntity<?> getAllActiveTeams() {
+    public ResponseEntity<?> getAllActiveTeams(@RequestParam(value = "size", required = false) Integer size,
+                                               @RequestParam(value = "token", required = false) String token,
+                                               WebRequest webRequest, HttpServletResponse response)
+            throws IOException {
         log.debug("Received 'Get all teams' request");
+        if (isNotModified(webRequest)) {
+            log.debug("Request 'Get all teams' is not modified");
+            return null;
+        }
+        if (size != null || token != null) {
+            TeamsPage page = teamService.getActiveTeamsPage(token, size);
+            log.debug("Request 'Get all teams' returned page {}", page);
+            log.info("Teams page received. Teams number: {}", page.getTeams().size());
+            return ResponseEntity.ok(page);
+        }
+        if (streamingEnabled) {
+            long count = writeAllActiveTeams(response);
+            log.info("Teams content streamed. Teams number: {}", count);
+            return null;
+        }
+        if (activeTeamsCache.isEnabled()) {
+            ActiveTeamsCache.Entry entry = activeTeamsCache.getAllActiveTeams();
+            writeJson(response, entry.getJson());
+            log.info("Cached teams content received. Teams number: {}", entry.getTeams().size());
+            return null;
+        }
         List<Team> teams = teamService.getAllActiveTeams();
         log.debug("Request 'Get all teams' returned teams {}", teams);
         log.info("Teams content received. Teams number: {}", teams.size());
@@ -56,11 +141,97 @@ public class TeamController {
     }
 
     @GetMapping(value = "${teams.endpoint.getTeam}" + "/{uuid}", produces = "application/json")
-    public ResponseEntity<?> getTeamByUuid(@PathVariable String uuid) {
+    public ResponseEntity<?> getTeamByUuid(@PathVariable String uuid, WebRequest webRequest) {
         log.debug("Received 'Get team' request. Get team of user {}", uuid);
+        if (isNotModified(webRequest)) {
+            log.debug("Request 'Get team' of user {} is not modified", uuid);
+            return null;
+        }
         Team team = teamService.getUserActiveTeam(uuid);
         log.debug("Request 'Get team' returned team {}", team);
         log.info("Team content received. Team Id: {}", team.getId());
         return ResponseEntity.ok(team);
     }
+
+    @PostMapping(value = "${teams.endpoint.getUsersTeams}", consumes = "application/json", produces = "application/json")
+    public ResponseEntity<?> getUsersTeams(@Valid @RequestBody UsersTeamsRequest request) {
+        log.debug("Received 'Get users teams' request {}", request);
+        Map<String, UserTeam> teams = teamService.getUsersActiveTeams(request);
+        log.debug("Request 'Get users teams' returned teams {}", teams);
+        log.info("Users teams content received. Users number: {}", teams.size());
+        return ResponseEntity.ok(teams);
+    }
+
+    @GetMapping(value = "${teams.endpoint.getTeamsHistory}", produces = "application/json")
+    public ResponseEntity<?> getTeamsHistory(
+            @RequestParam(value = "at", required = false) Instant at,
+            @RequestParam(value = "from", required = false) Instant from,
+            @RequestParam(value = "to", required = false) Instant to) {
+        log.debug("Received 'Get teams history' request. At '{}', from '{}', to '{}'", at, from, to);
+        List<Team> teams = teamHistoryService.getTeamsHistory(null, toDate(at), toDate(from), toDate(to));
+        log.info("Teams history received. Teams number: {}", teams.size());
+        return ResponseEntity.ok(teams);
+    }
+
+    @GetMapping(value = "${teams.endpoint.getUserTeamsHistory}" + "/{uuid}", produces = "application/json")
+    public ResponseEntity<?> getUserTeamsHistory(
+            @PathVariable String uuid,
+            @RequestParam(value = "at", required = false) Instant at,
+            @RequestParam(value = "from", required = false) Instant from,
+            @RequestParam(value = "to", required = false) Instant to) {
+        log.debug("Received 'Get user teams history' request of user {}. At '{}', from '{}', to '{}'",
+                uuid, at, from, to);
+        List<Team> teams = teamHistoryService.getTeamsHistory(uuid, toDate(at), toDate(from), toDate(to));
+        log.debug("Request 'Get user teams history' returned teams {}", teams);
+        log.info("User teams history received. Teams number: {}", teams.size());
+        return ResponseEntity.ok(teams);
+    }
+
+    @GetMapping(value = "${teams.endpoint.getUserTeamsTimeline}" + "/{uuid}", produces = "application/json")
+    public ResponseEntity<?> getUserTeamsTimeline(@PathVariable String uuid,
+                                                  @RequestParam(value = "size", required = false) Integer size,
+                                                  @RequestParam(value = "token", required = false) String token) {
+        log.debug("Received 'Get user teams timeline' request of user {}", uuid);
+        TeamsPage page = teamHistoryService.getUserTeamsTimeline(uuid, token, size);
+        log.debug("Request 'Get user teams timeline' returned page {}", page);
+        log.info("User teams timeline page received. Teams number: {}", page.getTeams().size());
+        return ResponseEntity.ok(page);
+    }
+
+    private static void writeJson(HttpServletResponse response, byte[] json) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        response.setContentLength(json.length);
+        response.getOutputStream().write(json);
+    }
+
+    private long writeAllActiveTeams(HttpServletResponse response) throws IOException {
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        ObjectWriter teamWriter = objectMapper.writerFor(Team.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            long count = teamService.streamAllActiveTeams(team -> {
+                try {
+                    teamWriter.writeValue(generator, team);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            });
+            generator.writeEndArray();
+            return count;
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private static Date toDate(Instant instant) {
+        return instant == null ? null : Date.from(instant);
+    }
+
+    private boolean isNotModified(WebRequest webRequest) {
+        long lastModified = teamsVersion.getLastModified();
+        return webRequest.checkNotModified(teamsVersion.getETag(), lastModified);
+    }
 }
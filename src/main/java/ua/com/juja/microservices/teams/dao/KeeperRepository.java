@@ -1,5 +1,7 @@
 package ua.com.juja.microservices.teams.dao;
 
+import ua.com.juja.microservices.teams.entity.Keeper;
+
 import java.util.List;
 
 /**
@@ -7,4 +9,6 @@ import java.util.List;
  */
 public interface KeeperRepository {
     List<String> getDirections(String uuid);
+
+    List<Keeper> getDirectionKeepers(String direction);
 }
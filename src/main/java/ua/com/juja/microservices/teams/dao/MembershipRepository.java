@@ -0,0 +1,74 @@
+package ua.com.juja.microservices.teams.dao;
+
+import ua.com.juja.microservices.teams.entity.Membership;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Memberships of users in teams. A user has at most one membership active at a date, so reservation of the
+ * user for a team fails while the user is reserved by another team.
+ *
+ * @author Ivan Shapovalov
+ */
+public interface MembershipRepository {
+
+    /**
+     * Reserves all members of team or none of them.
+     *
+     * @return uuid of member reserved by another team or null if all members are reserved for the team
+     */
+    String reserveMembers(Team team, Date actualDate);
+
+    /**
+     * Reserves members of teams without common members. Every team is reserved as a whole or not at all.
+     *
+     * @return uuid of member reserved by another team by id of team, only for teams which are not reserved
+     */
+    Map<String, String> reserveMembers(List<Team> teams, Date actualDate);
+
+    /**
+     * Removes memberships of team, used when team is not saved after reservation.
+     */
+    void releaseMembers(Team team);
+
+    /**
+     * Ends memberships of deactivated team, so its members may be reserved by another team.
+     */
+    void deactivateMembers(Team team);
+
+    /**
+     * Ends memberships of teams deactivated at the same date.
+     */
+    void deactivateMembers(Collection<String> teamIds, Date deactivateDate);
+
+    /**
+     * Finds membership of user by uuid.
+     *
+     * @return membership of user active at actual date or null if user is not in team
+     */
+    Membership getActiveMembership(String uuid, Date actualDate);
+
+    /**
+     * Finds memberships of given users by uuids.
+     *
+     * @return sorted uuids of given users which have memberships active at actual date
+     */
+    List<String> getUsersInActiveTeams(Set<String> uuids, Date actualDate);
+
+    List<Membership> getNotDeactivatedMemberships(Date actualDate);
+
+    /**
+     * Replaces memberships of the same users or creates them, used to repair memberships which don't match teams.
+     * Membership of a user is replaced only if it is still the one read, or is absent or not active at actual date
+     * if none was read, so memberships changed since they were read are left.
+     *
+     * @param read memberships by uuid which were read before the repair
+     * @return count of replaced or created memberships
+     */
+    int repairMemberships(Map<String, Membership> read, List<Membership> repaired, Date actualDate);
+}
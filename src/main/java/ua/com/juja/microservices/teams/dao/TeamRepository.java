@@ -0,0 +1,111 @@
+package ua.com.juja.microservices.teams.dao;
+
+import ua.com.juja.microservices.teams.entity.Team;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Storage of teams. A team is active at a date when its activate date is not after the date and its
+ * deactivate date is after the date. Every saved, inserted or deactivated team is published as
+ * {@link TeamSavedEvent}.
+ *
+ * @author Ivan Shapovalov
+ */
+public interface TeamRepository {
+
+    /**
+     * @return team with given id or null if there is no such team
+     */
+    Team getTeam(String id);
+
+    List<Team> getUserActiveTeams(String uuid, Date actualDate);
+
+    /**
+     * Deactivates the only active team of user at actual date. If user is in several active teams no team is
+     * changed.
+     *
+     * @return deactivated team, several active teams of user (not deactivated) or empty list if user is not in team
+     */
+    List<Team> deactivateUserActiveTeam(String uuid, Date actualDate);
+
+    List<Team> getUsersActiveTeams(Set<String> uuids, Date actualDate);
+
+    /**
+     * @return sorted uuids of given members which are in active teams at actual date
+     */
+    List<String> checkUsersActiveTeams(Set<String> members, Date actualDate);
+
+    List<Team> getAllActiveTeams(Date actualDate);
+
+    /**
+     * Passes active teams to consumer one by one.
+     *
+     * @return count of passed teams
+     */
+    long streamAllActiveTeams(Date actualDate, Consumer<Team> consumer);
+
+    /**
+     * Returns active teams with id greater than given one in order of ids.
+     *
+     * @param afterId id of the last team of previous page or null for the first page
+     */
+    List<Team> getActiveTeamsPage(Date actualDate, String afterId, int size);
+
+    /**
+     * Returns teams of user ordered by activate date and id. Keeper who activated a team may be omitted.
+     *
+     * @param afterActivateDate activate date of the last team of previous page or null for the first page
+     * @param afterId           id of the last team of previous page or null for the first page
+     */
+    List<Team> getUserTeamsTimeline(String uuid, Date afterActivateDate, String afterId, int size);
+
+    /**
+     * Returns teams which were active at any moment of period.
+     *
+     * @param uuid member of teams or null for teams of all users
+     * @param from start of period, inclusive
+     * @param to   end of period, exclusive
+     */
+    List<Team> getTeamsActiveBetween(String uuid, Date from, Date to);
+
+    List<Team> getNotDeactivatedTeams(Date actualDate);
+
+    Team saveTeam(Team team);
+
+    /**
+     * Inserts teams independently, a team which fails doesn't stop insert of others.
+     *
+     * @return inserted teams
+     */
+    List<Team> insertTeams(List<Team> teams);
+
+    /**
+     * Sets deactivate date of teams which are not deactivated yet.
+     *
+     * @return teams deactivated by this call
+     */
+    List<Team> deactivateTeams(List<Team> teams, Date actualDate);
+
+    /**
+     * Moves one batch of teams deactivated before given date out of the storage of active teams. Archived teams
+     * are still returned by queries at earlier dates.
+     *
+     * @return count of archived teams
+     */
+    int archiveTeams(Date deactivatedBefore, int batchSize);
+
+    /**
+     * Date before which teams are deactivated to be archived.
+     */
+    Date archiveDate();
+
+    /**
+     * Version of teams, changed by every write of teams. Version is kept in the storage, so it is the same for all
+     * instances of the service which use the storage. Version is read like teams are, so teams read after the
+     * version have all writes made before it.
+     */
+    String getVersion();
+}
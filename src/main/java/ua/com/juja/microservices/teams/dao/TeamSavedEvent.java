@@ -0,0 +1,21 @@
+package ua.com.juja.microservices.teams.dao;
+
+import lombok.Getter;
+import lombok.ToString;
+import ua.com.juja.microservices.teams.entity.Team;
+
+/**
+ * Published by teams repository after team was saved into DB
+ *
+ * @author Ivan Shapovalov
+ */
+@Getter
+@ToString
+public class TeamSavedEvent {
+
+    private final Team team;
+
+    public TeamSavedEvent(Team team) {
+        this.team = team;
+    }
+}
@@ -0,0 +1,151 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import ua.com.juja.microservices.teams.dao.MembershipRepository;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.entity.Membership;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Memberships of a single node held in memory, used with teams stored in journal. Memberships are not
+ * journaled, they are rebuilt from teams which are not deactivated on start. Methods are synchronized, so
+ * reservation of all members of a team is atomic.
+ *
+ * @author Ivan Shapovalov
+ */
+@Repository
+@Profile("journal")
+@Slf4j
+public class InMemoryMembershipRepository implements MembershipRepository {
+
+    @Inject
+    private TeamRepository teamRepository;
+
+    private final Map<String, Membership> memberships = new HashMap<>();
+    private final Map<String, Set<String>> membersByTeam = new HashMap<>();
+
+    @PostConstruct
+    public synchronized void init() {
+        for (Team team : teamRepository.getNotDeactivatedTeams(new Date())) {
+            team.getMembers().forEach(uuid -> put(new Membership(uuid, team)));
+        }
+        log.info("Memberships are rebuilt from teams. Memberships size '{}'", memberships.size());
+    }
+
+    @Override
+    public synchronized String reserveMembers(Team team, Date actualDate) {
+        for (String uuid : team.getMembers()) {
+            Membership membership = memberships.get(uuid);
+            if (membership != null && membership.getDeactivateDate().after(actualDate)) {
+                log.debug("Member '{}' of team '{}' is reserved by another team", uuid, team.getId());
+                return uuid;
+            }
+        }
+        team.getMembers().forEach(uuid -> put(new Membership(uuid, team)));
+        log.debug("Reserved members '{}' of team '{}'", team.getMembers(), team.getId());
+        return null;
+    }
+
+    @Override
+    public synchronized Map<String, String> reserveMembers(List<Team> teams, Date actualDate) {
+        Map<String, String> reservedUsers = new HashMap<>();
+        for (Team team : teams) {
+            String reservedUser = reserveMembers(team, actualDate);
+            if (reservedUser != null) {
+                reservedUsers.put(team.getId(), reservedUser);
+            }
+        }
+        return reservedUsers;
+    }
+
+    @Override
+    public synchronized void releaseMembers(Team team) {
+        Set<String> members = membersByTeam.remove(team.getId());
+        if (members != null) {
+            members.forEach(memberships::remove);
+            log.debug("Released members '{}' of team '{}'", members, team.getId());
+        }
+    }
+
+    @Override
+    public void deactivateMembers(Team team) {
+        deactivateMembers(Collections.singletonList(team.getId()), team.getDeactivateDate());
+    }
+
+    @Override
+    public synchronized void deactivateMembers(Collection<String> teamIds, Date deactivateDate) {
+        for (String teamId : teamIds) {
+            for (String uuid : membersByTeam.getOrDefault(teamId, Collections.emptySet())) {
+                Membership membership = memberships.get(uuid);
+                memberships.put(uuid, new Membership(uuid, teamId, membership.getActivateDate(), deactivateDate));
+            }
+        }
+        log.debug("Deactivated members of teams '{}'", teamIds);
+    }
+
+    @Override
+    public synchronized Membership getActiveMembership(String uuid, Date actualDate) {
+        Membership membership = memberships.get(uuid);
+        return membership != null && isActive(membership, actualDate) ? membership : null;
+    }
+
+    @Override
+    public synchronized List<String> getUsersInActiveTeams(Set<String> uuids, Date actualDate) {
+        return uuids.stream()
+                .filter(uuid -> memberships.containsKey(uuid) && isActive(memberships.get(uuid), actualDate))
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized List<Membership> getNotDeactivatedMemberships(Date actualDate) {
+        return memberships.values().stream()
+                .filter(membership -> membership.getDeactivateDate().after(actualDate))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized int repairMemberships(Map<String, Membership> read, List<Membership> repaired,
+                                              Date actualDate) {
+        int count = 0;
+        for (Membership membership : repaired) {
+            Membership previous = read.get(membership.getUuid());
+            Membership current = memberships.get(membership.getUuid());
+            if (previous == null ? current == null || !current.getDeactivateDate().after(actualDate)
+                    : current == previous) {
+                put(membership);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void put(Membership membership) {
+        Membership previous = memberships.put(membership.getUuid(), membership);
+        if (previous != null) {
+            Set<String> previousMembers = membersByTeam.get(previous.getTeamId());
+            if (previousMembers != null && previousMembers.remove(membership.getUuid()) && previousMembers.isEmpty()) {
+                membersByTeam.remove(previous.getTeamId());
+            }
+        }
+        membersByTeam.computeIfAbsent(membership.getTeamId(), key -> new HashSet<>()).add(membership.getUuid());
+    }
+
+    private static boolean isActive(Membership membership, Date actualDate) {
+        return !membership.getActivateDate().after(actualDate) && membership.getDeactivateDate().after(actualDate);
+    }
+}
@@ -0,0 +1,471 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.dao.TeamSavedEvent;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Teams repository of a single node without MongoDB. Teams are held in memory in slots, which are never
+ * reused, and every member is indexed by compact array of slots of its teams. Every change is appended to
+ * {@link TeamJournal} before it is applied, and periodic snapshots bound the journal replayed on start.
+ * <p>
+ * Stored teams are never changed in place, a changed team replaces its slot, so readers get copies and teams
+ * taken for snapshot stay consistent. Teams are not archived, as the whole history is held in memory anyway.
+ *
+ * @author Ivan Shapovalov
+ */
+@Repository
+@Profile("journal")
+@Slf4j
+public class JournalTeamRepository implements TeamRepository, PublicMetrics {
+
+    @Value("${teams.journal.directory}")
+    private String journalDirectory;
+    @Value("${teams.journal.segmentBytes}")
+    private int segmentBytes;
+    @Value("${teams.journal.fsync}")
+    private boolean fsync;
+    @Value("${teams.archive.ageDays}")
+    private int archiveAgeDays;
+    @Inject
+    private ApplicationEventPublisher eventPublisher;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final List<Team> slots = new ArrayList<>();
+    private final Map<String, Integer> slotsById = new HashMap<>();
+    private final Map<String, SlotList> slotsByMember = new HashMap<>();
+    private TeamJournal journal;
+    private final long openTime = System.currentTimeMillis();
+    /** Count of teams written since open. Guarded by write lock */
+    private volatile long writes;
+
+    @PostConstruct
+    public void init() throws IOException {
+        journal = new TeamJournal(Paths.get(journalDirectory), segmentBytes, fsync);
+        journal.open().forEach(this::store);
+        log.info("Teams are stored in journal '{}'. Teams size '{}', fsync '{}'", journalDirectory, slots.size(),
+                fsync);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        snapshot();
+        journal.close();
+    }
+
+    @Scheduled(initialDelayString = "${teams.journal.snapshotMs}", fixedDelayString = "${teams.journal.snapshotMs}")
+    public void scheduledSnapshot() {
+        try {
+            snapshot();
+        } catch (IOException ex) {
+            log.warn("Teams snapshot is not written: [{}]", ex.getMessage());
+        }
+    }
+
+    /**
+     * Writes snapshot of all teams. Writers wait only while the next journal generation is started, snapshots
+     * are written one at a time.
+     */
+    public synchronized void snapshot() throws IOException {
+        List<Team> teams;
+        long generation;
+        lock.writeLock().lock();
+        try {
+            generation = journal.rotate();
+            teams = new ArrayList<>(slots);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        journal.snapshot(generation, teams);
+    }
+
+    @Override
+    public Team getTeam(String id) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slotsById.get(id);
+            return slot == null ? null : copy(slots.get(slot));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Team> getUserActiveTeams(String uuid, Date actualDate) {
+        log.debug("Started 'Get user teams' '{}' from journal at date '{}'", uuid, actualDate);
+        List<Team> teams = findMemberTeams(Collections.singleton(uuid), isActive(actualDate));
+        log.debug("Finished 'Get user '{}' teams' from journal at date '{}'. Teams <{}>", uuid, actualDate, teams);
+        return teams;
+    }
+
+    /**
+     * Deactivates the team under write lock, so the check of other active teams of user and the change are atomic.
+     */
+    @Override
+    public List<Team> deactivateUserActiveTeam(String uuid, Date actualDate) {
+        log.debug("Started 'Deactivate user '{}' team' in journal at date '{}'", uuid, actualDate);
+        Team deactivated;
+        lock.writeLock().lock();
+        try {
+            List<Team> teams = findMemberTeams(Collections.singleton(uuid), isActive(actualDate));
+            if (teams.size() != 1) {
+                log.debug("Finished 'Deactivate user '{}' team' in journal at date '{}'. Teams <{}>", uuid,
+                        actualDate, teams);
+                return teams;
+            }
+            deactivated = teams.get(0);
+            deactivated.setDeactivateDate(actualDate);
+            write(copy(deactivated));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        eventPublisher.publishEvent(new TeamSavedEvent(deactivated));
+        log.debug("Finished 'Deactivate user '{}' team' in journal at date '{}'. Team <{}>", uuid, actualDate,
+                deactivated);
+        return Collections.singletonList(deactivated);
+    }
+
+    @Override
+    public List<Team> getUsersActiveTeams(Set<String> uuids, Date actualDate) {
+        log.debug("Started 'Get users teams' '{}' from journal at date '{}'", uuids, actualDate);
+        List<Team> teams = findMemberTeams(uuids, isActive(actualDate));
+        log.debug("Finished 'Get users '{}' teams' from journal at date '{}'. Teams size '{}'", uuids, actualDate,
+                teams.size());
+        return teams;
+    }
+
+    @Override
+    public List<String> checkUsersActiveTeams(Set<String> members, Date actualDate) {
+        log.debug("Started 'checkUsersActiveTeams' '{}' from journal at date '{}'", members, actualDate);
+        Predicate<Team> active = isActive(actualDate);
+        List<String> users = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (String member : new TreeSet<>(members)) {
+                SlotList memberSlots = slotsByMember.get(member);
+                if (memberSlots != null && memberSlots.stream().anyMatch(slot -> active.test(slots.get(slot)))) {
+                    users.add(member);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        log.debug("Finished 'checkUsersActiveTeams' '{}' from journal at date '{}'. Users in active teams <{}>",
+                members, actualDate, users);
+        return users;
+    }
+
+    @Override
+    public List<Team> getAllActiveTeams(Date actualDate) {
+        log.debug("Started 'Get all active teams' from journal at date '{}'", actualDate);
+        List<Team> teams = findTeams(isActive(actualDate));
+        log.debug("Finished 'Get all active teams' from journal at date '{}'. Teams size '{}'", actualDate,
+                teams.size());
+        return teams;
+    }
+
+    /**
+     * Teams are copied under read lock and passed to consumer after it is released, so a slow consumer doesn't
+     * hold writers.
+     */
+    @Override
+    public long streamAllActiveTeams(Date actualDate, Consumer<Team> consumer) {
+        List<Team> teams = getAllActiveTeams(actualDate);
+        teams.forEach(consumer);
+        return teams.size();
+    }
+
+    @Override
+    public List<Team> getActiveTeamsPage(Date actualDate, String afterId, int size) {
+        log.debug("Started 'Get active teams page' after '{}' from journal at date '{}'", afterId, actualDate);
+        Predicate<Team> active = isActive(actualDate);
+        List<Team> teams = findTeams(team -> active.test(team) &&
+                (afterId == null || team.getId().compareTo(afterId) > 0));
+        teams.sort(Comparator.comparing(Team::getId));
+        List<Team> page = teams.size() > size ? new ArrayList<>(teams.subList(0, size)) : teams;
+        log.debug("Finished 'Get active teams page' after '{}' from journal at date '{}'. Teams size '{}'",
+                afterId, actualDate, page.size());
+        return page;
+    }
+
+    @Override
+    public List<Team> getUserTeamsTimeline(String uuid, Date afterActivateDate, String afterId, int size) {
+        log.debug("Started 'Get user teams timeline' '{}' after '{}' '{}' from journal", uuid, afterActivateDate,
+                afterId);
+        Comparator<Team> order = Comparator.comparing(Team::getActivateDate).thenComparing(Team::getId);
+        List<Team> teams = findMemberTeams(Collections.singleton(uuid), team -> afterActivateDate == null ||
+                team.getActivateDate().after(afterActivateDate) ||
+                team.getActivateDate().equals(afterActivateDate) && team.getId().compareTo(afterId) > 0);
+        List<Team> timeline = teams.stream().sorted(order).limit(size).collect(Collectors.toList());
+        log.debug("Finished 'Get user teams timeline' '{}' from journal. Teams size '{}'", uuid, timeline.size());
+        return timeline;
+    }
+
+    @Override
+    public List<Team> getTeamsActiveBetween(String uuid, Date from, Date to) {
+        log.debug("Started 'Get teams active between' '{}' and '{}' of user '{}' from journal", from, to, uuid);
+        Predicate<Team> activeBetween = team -> team.getDeactivateDate().after(from) &&
+                team.getActivateDate().before(to);
+        List<Team> teams = uuid == null ? findTeams(activeBetween) :
+                findMemberTeams(Collections.singleton(uuid), activeBetween);
+        log.debug("Finished 'Get teams active between' '{}' and '{}' of user '{}' from journal. Teams size '{}'",
+                from, to, uuid, teams.size());
+        return teams;
+    }
+
+    @Override
+    public List<Team> getNotDeactivatedTeams(Date actualDate) {
+        return findTeams(team -> team.getDeactivateDate().after(actualDate));
+    }
+
+    /**
+     * Saves team and sets its id if it is new.
+     */
+    @Override
+    public Team saveTeam(Team team) {
+        log.debug("Started 'Save team' '{}' into journal", team);
+        lock.writeLock().lock();
+        try {
+            if (team.getId() == null) {
+                team.setId(new ObjectId().toHexString());
+            }
+            write(copy(team));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        eventPublisher.publishEvent(new TeamSavedEvent(team));
+        log.debug("Finished 'Save team' '{}' into journal", team);
+        return team;
+    }
+
+    /**
+     * Inserts teams with new or unknown ids, a team with id which is already stored is not inserted.
+     */
+    @Override
+    public List<Team> insertTeams(List<Team> teams) {
+        log.debug("Started 'Insert teams' '{}' into journal", teams.size());
+        List<Team> inserted = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            for (Team team : teams) {
+                if (team.getId() == null) {
+                    team.setId(new ObjectId().toHexString());
+                } else if (slotsById.containsKey(team.getId())) {
+                    log.warn("Team '{}' is not inserted into journal, it is stored already", team.getId());
+                    continue;
+                }
+                write(copy(team));
+                inserted.add(team);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        inserted.forEach(team -> eventPublisher.publishEvent(new TeamSavedEvent(team)));
+        log.debug("Finished 'Insert teams' into journal. Teams size '{}'", inserted.size());
+        return inserted;
+    }
+
+    @Override
+    public List<Team> deactivateTeams(List<Team> teams, Date actualDate) {
+        log.debug("Started 'Deactivate teams' '{}' in journal at date '{}'", teams.size(), actualDate);
+        List<Team> deactivated = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            for (Team team : teams) {
+                Integer slot = slotsById.get(team.getId());
+                if (slot == null || !slots.get(slot).getDeactivateDate().after(actualDate)) {
+                    continue;
+                }
+                Team stored = copy(slots.get(slot));
+                stored.setDeactivateDate(actualDate);
+                write(stored);
+                team.setDeactivateDate(actualDate);
+                deactivated.add(team);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        deactivated.forEach(team -> eventPublisher.publishEvent(new TeamSavedEvent(team)));
+        log.debug("Finished 'Deactivate teams' in journal at date '{}'. Teams size '{}'", actualDate,
+                deactivated.size());
+        return deactivated;
+    }
+
+    /**
+     * Teams are not archived, journal store holds the whole history.
+     *
+     * @return 0
+     */
+    @Override
+    public int archiveTeams(Date deactivatedBefore, int batchSize) {
+        return 0;
+    }
+
+    @Override
+    public Date archiveDate() {
+        return Date.from(Instant.now().minus(archiveAgeDays, ChronoUnit.DAYS));
+    }
+
+    /**
+     * Journal is used by a single instance, so version is count of writes since the journal is opened.
+     */
+    @Override
+    public String getVersion() {
+        return openTime + "-" + writes;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        lock.readLock().lock();
+        try {
+            return Arrays.asList(
+                    new Metric<>("teams.journal.teams", slots.size()),
+                    new Metric<>("teams.journal.members", slotsByMember.size()),
+                    new Metric<>("teams.journal.records", journal.getRecords()));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends team to journal and stores it. Must be called under write lock.
+     */
+    private void write(Team team) {
+        journal.append(team);
+        store(team);
+        writes++;
+    }
+
+    private void store(Team team) {
+        Integer slot = slotsById.get(team.getId());
+        if (slot == null) {
+            slot = slots.size();
+            slots.add(team);
+            slotsById.put(team.getId(), slot);
+            for (String member : team.getMembers()) {
+                slotsByMember.computeIfAbsent(member, key -> new SlotList()).add(slot);
+            }
+            return;
+        }
+        Team previous = slots.set(slot, team);
+        for (String member : previous.getMembers()) {
+            if (!team.getMembers().contains(member)) {
+                slotsByMember.get(member).remove(slot);
+            }
+        }
+        for (String member : team.getMembers()) {
+            if (!previous.getMembers().contains(member)) {
+                slotsByMember.computeIfAbsent(member, key -> new SlotList()).add(slot);
+            }
+        }
+    }
+
+    private List<Team> findTeams(Predicate<Team> filter) {
+        lock.readLock().lock();
+        try {
+            return slots.stream().filter(filter).map(JournalTeamRepository::copy).collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds teams of given members by member index, a team of several members is returned once.
+     */
+    private List<Team> findMemberTeams(Collection<String> members, Predicate<Team> filter) {
+        lock.readLock().lock();
+        try {
+            BitSet found = new BitSet(slots.size());
+            for (String member : members) {
+                SlotList memberSlots = slotsByMember.get(member);
+                if (memberSlots != null) {
+                    memberSlots.stream().forEach(found::set);
+                }
+            }
+            return found.stream()
+                    .mapToObj(slots::get)
+                    .filter(filter)
+                    .map(JournalTeamRepository::copy)
+                    .collect(Collectors.toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Predicate<Team> isActive(Date actualDate) {
+        return team -> !team.getActivateDate().after(actualDate) && team.getDeactivateDate().after(actualDate);
+    }
+
+    private static Team copy(Team team) {
+        Team copy = new Team(team.getFrom(), new HashSet<>(team.getMembers()));
+        copy.setId(team.getId());
+        copy.setActivateDate(new Date(team.getActivateDate().getTime()));
+        copy.setDeactivateDate(new Date(team.getDeactivateDate().getTime()));
+        return copy;
+    }
+
+    /**
+     * Growable array of slots without boxing, most members are in a few teams.
+     */
+    private static class SlotList {
+        private int[] slots = new int[2];
+        private int size;
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        void remove(int slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    System.arraycopy(slots, i + 1, slots, i, size - i - 1);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        IntStream stream() {
+            return Arrays.stream(slots, 0, size);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in milliseconds with fixed buckets. Every bucket counts values not greater
+ * than its bound and not counted by previous buckets, the last bucket counts the rest.
+ *
+ * @author Ivan Shapovalov
+ */
+class LatencyHistogram {
+    static final long[] BOUNDS_MS = {1, 5, 10, 50, 100, 500, 1000};
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_MS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMs = new AtomicLong();
+    private final AtomicLong maxMs = new AtomicLong();
+    private final AtomicLong documents = new AtomicLong();
+
+    void record(long elapsedMs, long returnedDocuments) {
+        int bucket = 0;
+        while (bucket < BOUNDS_MS.length && elapsedMs > BOUNDS_MS[bucket]) {
+            bucket++;
+        }
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        totalMs.addAndGet(elapsedMs);
+        maxMs.accumulateAndGet(elapsedMs, Math::max);
+        documents.addAndGet(returnedDocuments);
+    }
+
+    long getCount() {
+        return count.get();
+    }
+
+    long getBucket(int bucket) {
+        return buckets.get(bucket);
+    }
+
+    List<Metric<?>> metrics(String prefix) {
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(prefix + ".count", count.get()));
+        metrics.add(new Metric<>(prefix + ".totalMs", totalMs.get()));
+        metrics.add(new Metric<>(prefix + ".maxMs", maxMs.get()));
+        metrics.add(new Metric<>(prefix + ".documents", documents.get()));
+        for (int i = 0; i < BOUNDS_MS.length; i++) {
+            metrics.add(new Metric<>(prefix + ".le" + BOUNDS_MS[i] + "ms", buckets.get(i)));
+        }
+        metrics.add(new Metric<>(prefix + ".gt" + BOUNDS_MS[BOUNDS_MS.length - 1] + "ms",
+                buckets.get(BOUNDS_MS.length)));
+        return metrics;
+    }
+}
@@ -0,0 +1,208 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.CommandResult;
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.data.mongodb.MongoDbFactory;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import javax.inject.Provider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Records latency and returned documents of every Mongo command by command name and by repository operation
+ * which sent it. Commands slower than threshold are logged with their filter and, for queries, with the
+ * winning plan of explain, which runs in background so the slow request is not delayed further.
+ * <p>
+ * Driver calls the listener in the thread which sends the command, so commands are related to the operation
+ * run by {@link #time} in the same thread.
+ *
+ * @author Ivan Shapovalov
+ */
+@Slf4j
+public class MongoCommandMetrics implements CommandListener, PublicMetrics {
+    static final Set<String> EXPLAINABLE_COMMANDS =
+            new HashSet<>(Arrays.asList("find", "count", "distinct", "findandmodify", "aggregate"));
+    private static final int EXPLAIN_QUEUE_CAPACITY = 10;
+
+    @Value("${teams.mongo.slowQuery.thresholdMs}")
+    private long slowQueryThresholdMs;
+    @Value("${teams.mongo.slowQuery.explain}")
+    private boolean explainEnabled;
+    @Inject
+    private Provider<MongoDbFactory> mongoDbFactory;
+
+    private final Map<String, LatencyHistogram> commands = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> operations = new ConcurrentHashMap<>();
+    /** Explainable commands in flight by request id, kept as JSON as driver may release command buffer */
+    private final Map<Integer, String> startedCommands = new ConcurrentHashMap<>();
+    private final ThreadLocal<Operation> currentOperation = new ThreadLocal<>();
+    private final AtomicLong slowCommands = new AtomicLong();
+    private final ThreadPoolExecutor explainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(EXPLAIN_QUEUE_CAPACITY), new ThreadPoolExecutor.DiscardPolicy());
+
+    /**
+     * Runs operation of repository method in current thread and records it under given name.
+     *
+     * @return result of the operation
+     */
+    public <T> T time(String name, Supplier<T> operation) {
+        Operation current = new Operation(name, currentOperation.get());
+        currentOperation.set(current);
+        try {
+            return operation.get();
+        } finally {
+            current.close();
+        }
+    }
+
+    /**
+     * Runs operation without result in current thread and records it under given name.
+     */
+    public void run(String name, Runnable operation) {
+        time(name, () -> {
+            operation.run();
+            return null;
+        });
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (slowQueryThresholdMs >= 0 && EXPLAINABLE_COMMANDS.contains(event.getCommandName())) {
+            startedCommands.put(event.getRequestId(), event.getCommand().toJson());
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        long elapsedMs = event.getElapsedTime(TimeUnit.MILLISECONDS);
+        long documents = returnedDocuments(event.getResponse());
+        record(event.getRequestId(), event.getCommandName(), elapsedMs, documents);
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        record(event.getRequestId(), event.getCommandName(), event.getElapsedTime(TimeUnit.MILLISECONDS), 0);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        List<Metric<?>> metrics = new ArrayList<>();
+        commands.forEach((name, histogram) -> metrics.addAll(histogram.metrics("mongo.commands." + name)));
+        operations.forEach((name, histogram) -> metrics.addAll(histogram.metrics("teams.repository." + name)));
+        metrics.add(new Metric<>("mongo.commands.slow", slowCommands.get()));
+        return metrics;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        explainExecutor.shutdownNow();
+    }
+
+    LatencyHistogram getCommandHistogram(String commandName) {
+        return commands.get(commandName);
+    }
+
+    LatencyHistogram getOperationHistogram(String operationName) {
+        return operations.get(operationName);
+    }
+
+    private void record(int requestId, String commandName, long elapsedMs, long documents) {
+        commands.computeIfAbsent(commandName, name -> new LatencyHistogram()).record(elapsedMs, documents);
+        Operation operation = currentOperation.get();
+        if (operation != null) {
+            operation.documents += documents;
+        }
+        String command = startedCommands.remove(requestId);
+        if (slowQueryThresholdMs < 0 || elapsedMs < slowQueryThresholdMs) {
+            return;
+        }
+        slowCommands.incrementAndGet();
+        String operationName = operation == null ? "unknown" : operation.name;
+        if (command == null || !explainEnabled) {
+            log.warn("Slow Mongo command '{}' of operation '{}' took '{}' ms: {}", commandName, operationName,
+                    elapsedMs, command == null ? "command is not captured" : command);
+            return;
+        }
+        explainExecutor.execute(() ->
+                log.warn("Slow Mongo command '{}' of operation '{}' took '{}' ms: {}. Plan: {}",
+                        commandName, operationName, elapsedMs, command, explain(commandName, command)));
+    }
+
+    private Object explain(String commandName, String command) {
+        try {
+            BasicDBObject explained = BasicDBObject.parse(command);
+            explained.remove("$db");
+            BasicDBObject explain = "aggregate".equals(commandName) ?
+                    explained.append("explain", true) :
+                    new BasicDBObject("explain", explained).append("verbosity", "queryPlanner");
+            CommandResult result = mongoDbFactory.get().getDb().command(explain);
+            Object queryPlanner = result.get("queryPlanner");
+            return queryPlanner instanceof BasicDBObject ? ((BasicDBObject) queryPlanner).get("winningPlan") : result;
+        } catch (RuntimeException ex) {
+            return String.format("explain failed [%s]", ex.getMessage());
+        }
+    }
+
+    static long returnedDocuments(BsonDocument response) {
+        BsonValue cursor = response.get("cursor");
+        if (cursor != null && cursor.isDocument()) {
+            BsonValue batch = cursor.asDocument().containsKey("firstBatch") ?
+                    cursor.asDocument().get("firstBatch") : cursor.asDocument().get("nextBatch");
+            return batch != null && batch.isArray() ? batch.asArray().size() : 0;
+        }
+        BsonValue value = response.get("value");
+        if (value != null) {
+            return value.isDocument() ? 1 : 0;
+        }
+        BsonValue count = response.get("n");
+        return count != null && count.isNumber() ? count.asNumber().longValue() : 0;
+    }
+
+    /**
+     * Repository operation in progress. Closing it records elapsed time and documents returned by its commands.
+     */
+    private class Operation {
+        private final String name;
+        private final Operation outer;
+        private final long startNanos = System.nanoTime();
+        private long documents;
+
+        private Operation(String name, Operation outer) {
+            this.name = name;
+            this.outer = outer;
+        }
+
+        private void close() {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            operations.computeIfAbsent(name, key -> new LatencyHistogram()).record(elapsedMs, documents);
+            if (outer == null) {
+                currentOperation.remove();
+            } else {
+                currentOperation.set(outer);
+            }
+        }
+    }
+}
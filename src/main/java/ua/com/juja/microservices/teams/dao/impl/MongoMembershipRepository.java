@@ -0,0 +1,255 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import com.mongodb.BulkWriteError;
+import com.mongodb.WriteResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import ua.com.juja.microservices.teams.dao.MembershipRepository;
+import ua.com.juja.microservices.teams.entity.Membership;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+/**
+ * Memberships on MongoDB keyed by user uuid. Unique _id makes reservation of a user for a team atomic, so concurrent
+ * activations of teams with common members can't both succeed, while activations of disjoint teams
+ * don't wait for each other.
+ *
+ * @author Ivan Shapovalov
+ */
+@Repository
+@Profile("!journal")
+@Slf4j
+public class MongoMembershipRepository implements MembershipRepository {
+    private static final int DUPLICATE_KEY_ERROR = 11000;
+
+    @Value("${spring.data.mongodb.membershipCollection}")
+    private String membershipCollectionName;
+    @Inject
+    private MongoTemplate mongoTemplate;
+
+    /**
+     * Reserves members of team in order of uuids. Membership of user is taken only if it doesn't exist or
+     * is not active at actual date. On the first member reserved by another team all memberships taken
+     * for the team are released.
+     *
+     * @return uuid of member reserved by another team or null if all members are reserved for the team
+     */
+    @Override
+    public String reserveMembers(Team team, Date actualDate) {
+        log.debug("Started 'Reserve members' of team '{}' in DB at date '{}'", team.getId(), actualDate);
+        List<String> reserved = new ArrayList<>();
+        for (String uuid : new TreeSet<>(team.getMembers())) {
+            if (!reserveMember(new Membership(uuid, team), actualDate)) {
+                releaseMembers(team.getId(), reserved);
+                log.debug("Finished 'Reserve members' of team '{}' in DB. Member '{}' is reserved by another team",
+                        team.getId(), uuid);
+                return uuid;
+            }
+            reserved.add(uuid);
+        }
+        log.debug("Finished 'Reserve members' of team '{}' in DB. Members '{}'", team.getId(), reserved);
+        return null;
+    }
+
+    /**
+     * Reserves members of teams with one query of existing memberships and one unordered bulk insert of
+     * memberships of new users. Teams must not have common members. Inactive memberships are taken one by one.
+     * All memberships of a team which has a member reserved by another team are released.
+     *
+     * @return uuid of member reserved by another team by id of team, only for teams which are not reserved
+     */
+    @Override
+    public Map<String, String> reserveMembers(List<Team> teams, Date actualDate) {
+        log.debug("Started 'Reserve members' of teams '{}' in DB at date '{}'", teams.size(), actualDate);
+        List<Membership> memberships = teams.stream()
+                .flatMap(team -> team.getMembers().stream().map(uuid -> new Membership(uuid, team)))
+                .collect(Collectors.toList());
+        Map<String, String> reservedUsers = new HashMap<>();
+        if (memberships.isEmpty()) {
+            return reservedUsers;
+        }
+        Map<String, Membership> existing = mongoTemplate.find(new Query(Criteria.where("_id").in(
+                memberships.stream().map(Membership::getUuid).collect(Collectors.toList()))),
+                Membership.class, membershipCollectionName).stream()
+                .collect(Collectors.toMap(Membership::getUuid, membership -> membership));
+        memberships.stream()
+                .filter(membership -> existing.containsKey(membership.getUuid()) &&
+                        existing.get(membership.getUuid()).getDeactivateDate().after(actualDate))
+                .forEach(membership -> reservedUsers.putIfAbsent(membership.getTeamId(), membership.getUuid()));
+        List<Membership> newMemberships = memberships.stream()
+                .filter(membership -> !reservedUsers.containsKey(membership.getTeamId()) &&
+                        !existing.containsKey(membership.getUuid()))
+                .collect(Collectors.toList());
+        if (!newMemberships.isEmpty()) {
+            try {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Membership.class, membershipCollectionName)
+                        .insert(newMemberships)
+                        .execute();
+            } catch (BulkOperationException ex) {
+                for (BulkWriteError error : ex.getErrors()) {
+                    if (error.getCode() != DUPLICATE_KEY_ERROR) {
+                        throw ex;
+                    }
+                    Membership membership = newMemberships.get(error.getIndex());
+                    if (!takeInactiveMembership(membership, actualDate)) {
+                        reservedUsers.putIfAbsent(membership.getTeamId(), membership.getUuid());
+                    }
+                }
+            }
+        }
+        memberships.stream()
+                .filter(membership -> !reservedUsers.containsKey(membership.getTeamId()) &&
+                        existing.containsKey(membership.getUuid()))
+                .filter(membership -> !takeInactiveMembership(membership, actualDate))
+                .forEach(membership -> reservedUsers.putIfAbsent(membership.getTeamId(), membership.getUuid()));
+        teams.stream()
+                .filter(team -> reservedUsers.containsKey(team.getId()))
+                .forEach(this::releaseMembers);
+        log.debug("Finished 'Reserve members' of teams in DB. Members reserved by another teams '{}'", reservedUsers);
+        return reservedUsers;
+    }
+
+    @Override
+    public void releaseMembers(Team team) {
+        releaseMembers(team.getId(), new ArrayList<>(team.getMembers()));
+    }
+
+    @Override
+    public void deactivateMembers(Team team) {
+        deactivateMembers(Collections.singletonList(team.getId()), team.getDeactivateDate());
+    }
+
+    /**
+     * Ends memberships of teams deactivated at the same date with one update.
+     */
+    @Override
+    public void deactivateMembers(Collection<String> teamIds, Date deactivateDate) {
+        log.debug("Started 'Deactivate members' of teams '{}' in DB", teamIds);
+        if (teamIds.isEmpty()) {
+            return;
+        }
+        WriteResult result = mongoTemplate.updateMulti(new Query(Criteria.where("teamId").in(teamIds)),
+                new Update().set("deactivateDate", deactivateDate), membershipCollectionName);
+        log.debug("Finished 'Deactivate members' of teams '{}' in DB. Memberships '{}'", teamIds, result.getN());
+    }
+
+    /**
+     * Reads membership of user by _id.
+     */
+    @Override
+    public Membership getActiveMembership(String uuid, Date actualDate) {
+        Membership membership = mongoTemplate.findOne(new Query(activeMembershipsCriteria(actualDate)
+                .and("_id").is(uuid)), Membership.class, membershipCollectionName);
+        log.debug("Found membership of user '{}' in DB at date '{}'. Membership <{}>", uuid, actualDate, membership);
+        return membership;
+    }
+
+    /**
+     * Reads memberships of users by their _id values with one query, only _id values are fetched.
+     */
+    @Override
+    public List<String> getUsersInActiveTeams(Set<String> uuids, Date actualDate) {
+        Query query = new Query(activeMembershipsCriteria(actualDate).and("_id").in(uuids));
+        query.fields().include("_id");
+        List<String> users = mongoTemplate.find(query, Membership.class, membershipCollectionName).stream()
+                .map(Membership::getUuid)
+                .sorted()
+                .collect(Collectors.toList());
+        log.debug("Found users in active teams '{}' of users '{}' in DB at date '{}'", users, uuids, actualDate);
+        return users;
+    }
+
+    @Override
+    public List<Membership> getNotDeactivatedMemberships(Date actualDate) {
+        return mongoTemplate.find(new Query(Criteria.where("deactivateDate").gt(actualDate)), Membership.class,
+                membershipCollectionName);
+    }
+
+    /**
+     * Repairs memberships which were read with one unordered bulk write, membership is updated only if its teamId
+     * and dates are unchanged. Memberships which were not read are taken one by one like on reservation, only if
+     * they don't exist or are not active at actual date.
+     */
+    @Override
+    public int repairMemberships(Map<String, Membership> read, List<Membership> repaired, Date actualDate) {
+        log.debug("Started 'Repair memberships' '{}' in DB at date '{}'", repaired.size(), actualDate);
+        BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Membership.class,
+                membershipCollectionName);
+        int updates = 0;
+        int count = 0;
+        for (Membership membership : repaired) {
+            Membership previous = read.get(membership.getUuid());
+            if (previous == null) {
+                if (reserveMember(membership, actualDate)) {
+                    count++;
+                }
+            } else {
+                operations.updateOne(new Query(Criteria.where("_id").is(membership.getUuid())
+                                .and("teamId").is(previous.getTeamId())
+                                .and("activateDate").is(previous.getActivateDate())
+                                .and("deactivateDate").is(previous.getDeactivateDate())),
+                        new Update().set("teamId", membership.getTeamId())
+                                .set("activateDate", membership.getActivateDate())
+                                .set("deactivateDate", membership.getDeactivateDate()));
+                updates++;
+            }
+        }
+        if (updates > 0) {
+            count += operations.execute().getMatchedCount();
+        }
+        log.debug("Finished 'Repair memberships' in DB. Repaired memberships '{}' of '{}'", count, repaired.size());
+        return count;
+    }
+
+    private boolean reserveMember(Membership membership, Date actualDate) {
+        try {
+            mongoTemplate.insert(membership, membershipCollectionName);
+            return true;
+        } catch (DuplicateKeyException ex) {
+            return takeInactiveMembership(membership, actualDate);
+        }
+    }
+
+    private boolean takeInactiveMembership(Membership membership, Date actualDate) {
+        WriteResult result = mongoTemplate.updateFirst(new Query(Criteria.where("_id").is(membership.getUuid())
+                        .and("deactivateDate").lte(actualDate)),
+                new Update().set("teamId", membership.getTeamId())
+                        .set("activateDate", membership.getActivateDate())
+                        .set("deactivateDate", membership.getDeactivateDate()),
+                membershipCollectionName);
+        return result.getN() > 0;
+    }
+
+    private void releaseMembers(String teamId, List<String> uuids) {
+        if (uuids.isEmpty()) {
+            return;
+        }
+        mongoTemplate.remove(new Query(Criteria.where("_id").in(uuids).and("teamId").is(teamId)),
+                membershipCollectionName);
+        log.debug("Released members '{}' of team '{}' in DB", uuids, teamId);
+    }
+
+    private static Criteria activeMembershipsCriteria(Date actualDate) {
+        return Criteria.where("deactivateDate").gt(actualDate).and("activateDate").lte(actualDate);
+    }
+}
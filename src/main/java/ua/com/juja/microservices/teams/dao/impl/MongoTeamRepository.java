@@ -0,0 +1,652 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.BulkWriteResult;
+import com.mongodb.DBCursor;
+import com.mongodb.DBObject;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.MongoDbFactory;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.WriteConcernResolver;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.dao.TeamSavedEvent;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.group;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.match;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregation;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.project;
+import static org.springframework.data.mongodb.core.aggregation.Aggregation.unwind;
+
+/**
+ * Teams repository on MongoDB, used unless teams are stored in journal.
+ * <p>
+ * Read-only queries of clients may be served by secondaries with configured read preference. During
+ * read-your-writes window after the last write of this instance all client queries of this instance are served
+ * by primary. This is a best-effort window, not a guarantee: a writer whose next request goes to another
+ * instance, or comes after the window while secondaries lag more than the window, may not see its own write.
+ * Checks made before writes always read primary. Writes into teams collection use configured write concern.
+ * <p>
+ * Teams deactivated long ago are moved into archive collection by {@link #archiveTeams}. Queries at dates older
+ * than archive age read archive collection too, so history stays available while hot collection stays bounded.
+ * <p>
+ * In write-behind mode saved teams are written by {@link TeamWriteBehind} in bulk batches.
+ * <p>
+ * Every write of teams increments version document in version collection, so all instances see the same
+ * version of teams. The document keeps its creation date, so version doesn't repeat if the document is removed.
+ *
+ * @author Ivan Shapovalov
+ * @author Andrii.Sidun
+ */
+@Repository
+@Profile("!journal")
+@Slf4j
+public class MongoTeamRepository implements TeamRepository {
+    private static final String VERSION_ID = "teams";
+
+    @Value("${spring.data.mongodb.collection}")
+    private String mongoCollectionName;
+    @Value("${spring.data.mongodb.archiveCollection}")
+    private String archiveCollectionName;
+    @Value("${spring.data.mongodb.versionCollection}")
+    private String versionCollectionName;
+    @Value("${teams.archive.ageDays}")
+    private int archiveAgeDays;
+    @Value("${teams.checkUsersActiveTeams.strategy}")
+    private CheckStrategy checkStrategy;
+    @Value("${teams.getAllTeams.streaming.batchSize}")
+    private int streamingBatchSize;
+    @Value("${teams.mongo.readPreference}")
+    private String readPreferenceName;
+    @Value("${teams.mongo.writeConcern}")
+    private String writeConcernName;
+    @Value("${teams.mongo.readYourWritesMs}")
+    private long readYourWritesMs;
+    @Value("${teams.mongo.writeBehind.enabled}")
+    private boolean writeBehindEnabled;
+    @Value("${teams.mongo.writeBehind.batchSize}")
+    private int writeBehindBatchSize;
+    @Value("${teams.mongo.writeBehind.flushMs}")
+    private long writeBehindFlushMs;
+    @Value("${teams.mongo.writeBehind.queueCapacity}")
+    private int writeBehindQueueCapacity;
+    @Value("${teams.mongo.writeBehind.offerTimeoutMs}")
+    private long writeBehindOfferTimeoutMs;
+    @Value("${teams.mongo.writeBehind.saveTimeoutMs}")
+    private long writeBehindSaveTimeoutMs;
+    @Inject
+    private MongoTemplate mongoTemplate;
+    @Inject
+    private MongoDbFactory mongoDbFactory;
+    @Inject
+    private ApplicationEventPublisher eventPublisher;
+    @Inject
+    private MongoCommandMetrics commandMetrics;
+
+    private ReadPreference readPreference;
+    private MongoTemplate readTemplate;
+    private TeamWriteBehind writeBehind;
+    private volatile long lastWriteTime;
+
+    @PostConstruct
+    public void init() {
+        readPreference = ReadPreference.valueOf(readPreferenceName);
+        if (readPreference.equals(ReadPreference.primary())) {
+            readTemplate = mongoTemplate;
+        } else {
+            readTemplate = new MongoTemplate(mongoDbFactory, mongoTemplate.getConverter());
+            readTemplate.setReadPreference(readPreference);
+        }
+        WriteConcern writeConcern = null;
+        if (!writeConcernName.isEmpty()) {
+            writeConcern = WriteConcern.valueOf(writeConcernName);
+            if (writeConcern == null) {
+                throw new IllegalStateException(String.format("Write concern '%s' is unknown", writeConcernName));
+            }
+            mongoTemplate.setWriteConcernResolver(writeConcernResolver(mongoCollectionName, writeConcern));
+        }
+        if (writeBehindEnabled) {
+            writeBehind = new TeamWriteBehind(mongoTemplate, mongoCollectionName, writeConcern, commandMetrics,
+                    writeBehindBatchSize, writeBehindFlushMs, writeBehindQueueCapacity, writeBehindOfferTimeoutMs,
+                    this::incrementVersion);
+            log.info("Saved teams are written behind in batches of '{}' every '{}' ms", writeBehindBatchSize,
+                    writeBehindFlushMs);
+        }
+        log.info("Teams are read with preference '{}' and written with concern '{}'", readPreference,
+                writeConcernName.isEmpty() ? "default" : writeConcernName);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        if (writeBehind != null) {
+            writeBehind.shutdown();
+        }
+    }
+
+    @Override
+    public Team getTeam(String id) {
+        return commandMetrics.time("getTeam", () -> {
+            log.debug("Started 'Get team' '{}' from DB", id);
+            Team team = readTemplate().findById(id, Team.class, mongoCollectionName);
+            log.debug("Finished 'Get team' '{}' from DB. Team <{}>", id, team);
+            return team;
+        });
+    }
+
+    @Override
+    public List<Team> getUserActiveTeams(String uuid, Date actualDate) {
+        return commandMetrics.time("getUserActiveTeams", () -> {
+            log.debug("Started 'Get user teams' '{}' from DB at date '{}'", uuid, actualDate);
+            List<Team> teams = findWithArchived(new Query(userActiveTeamsCriteria(uuid, actualDate)), actualDate);
+            log.debug("Finished 'Get user '{}' teams' from DB at date '{}'. Teams <{}>", uuid, actualDate, teams);
+            return teams;
+        });
+    }
+
+    /**
+     * Finds active teams of user and, only if there is one team, sets its deactivate date with findAndModify which
+     * matches the team while it is active, so concurrent deactivations can't both succeed. A user in several teams
+     * is found before any team is changed, so readers never see a team deactivated by mistake.
+     * <p>
+     * The find and the findAndModify are not one atomic operation: a team activated for the user between them
+     * would be missed. Members of activated teams are reserved by memberships, so a user in an active team can't
+     * get into another one.
+     *
+     * @return deactivated team, several active teams of user (not deactivated) or empty list if user is not in team
+     */
+    @Override
+    public List<Team> deactivateUserActiveTeam(String uuid, Date actualDate) {
+        return commandMetrics.time("deactivateUserActiveTeam", () -> {
+            log.debug("Started 'Deactivate user '{}' team' in DB at date '{}'", uuid, actualDate);
+            List<Team> teams = mongoTemplate.find(new Query(userActiveTeamsCriteria(uuid, actualDate))
+                    .with(new Sort(Sort.Direction.ASC, "_id")), Team.class, mongoCollectionName);
+            if (teams.size() > 1) {
+                log.debug("Finished 'Deactivate user '{}' team' in DB at date '{}'. User is in several teams <{}>",
+                        uuid, actualDate, teams);
+                return teams;
+            }
+            Team team = teams.isEmpty() ? null : mongoTemplate.findAndModify(
+                    new Query(userActiveTeamsCriteria(uuid, actualDate)
+                            .and("_id").is(new ObjectId(teams.get(0).getId()))),
+                    new Update().set("deactivateDate", actualDate),
+                    FindAndModifyOptions.options().returnNew(false),
+                    Team.class, mongoCollectionName);
+            if (team == null) {
+                log.debug("Finished 'Deactivate user '{}' team' in DB at date '{}'. User is not in team",
+                        uuid, actualDate);
+                return Collections.emptyList();
+            }
+            lastWriteTime = System.currentTimeMillis();
+            team.setDeactivateDate(actualDate);
+            incrementVersion();
+            eventPublisher.publishEvent(new TeamSavedEvent(team));
+            log.debug("Finished 'Deactivate user '{}' team' in DB at date '{}'. Team <{}>", uuid, actualDate, team);
+            return Collections.singletonList(team);
+        });
+    }
+
+    @Override
+    public List<Team> getUsersActiveTeams(Set<String> uuids, Date actualDate) {
+        return commandMetrics.time("getUsersActiveTeams", () -> {
+            log.debug("Started 'Get users teams' '{}' from DB at date '{}'", uuids, actualDate);
+            List<Team> teams = mongoTemplate.find(new Query(usersActiveTeamsCriteria(uuids, actualDate)),
+                    Team.class, mongoCollectionName);
+            log.debug("Finished 'Get users '{}' teams' from DB at date '{}'. Teams size '{}'",
+                    uuids, actualDate, teams.size());
+            return teams;
+        });
+    }
+
+    @Override
+    public List<String> checkUsersActiveTeams(Set<String> members, Date actualDate) {
+        return commandMetrics.time("checkUsersActiveTeams", () -> {
+            log.debug("Started 'checkUsersActiveTeams' '{}' from DB at date '{}'", members.toArray(), actualDate);
+            if (checkStrategy == CheckStrategy.FIND) {
+                return findUsersInActiveTeams(members, actualDate);
+            }
+            Aggregation agg = newAggregation(
+                    match(usersActiveTeamsCriteria(members, actualDate)),
+                    project("members"),
+                    unwind("members"),
+                    match(Criteria.where("members").in(members)),
+                    group("members").count().as("teams"),
+                    project("teams").and("uuid").previousOperation()
+            );
+
+            AggregationResults<Member> groupResults
+                    = mongoTemplate.aggregate(agg, mongoCollectionName, Member.class);
+            List<Member> usersInActiveTeams = groupResults.getMappedResults();
+
+            List<String> users = usersInActiveTeams.stream().map(Member::getUuid).collect(Collectors.toList());
+            Collections.sort(users);
+            log.debug("Finished 'checkUsersActiveTeams '{}' teams' from DB at date '{}'. Users in active teams <{}>",
+                    members.toArray(), actualDate, users.toArray());
+            return users;
+        });
+    }
+
+    /**
+     * Answers the same question as aggregation with a single indexed find. Only members of matched teams
+     * are fetched and intersected with requested members in memory.
+     */
+    private List<String> findUsersInActiveTeams(Set<String> members, Date actualDate) {
+        Query query = new Query(usersActiveTeamsCriteria(members, actualDate));
+        query.fields().include("members").exclude("_id");
+        Set<String> users = new TreeSet<>();
+        try (DBCursor cursor = mongoTemplate.getCollection(mongoCollectionName)
+                .find(query.getQueryObject(), query.getFieldsObject())) {
+            for (DBObject team : cursor) {
+                Object teamMembers = team.get("members");
+                if (teamMembers instanceof Collection) {
+                    ((Collection<?>) teamMembers).stream()
+                            .filter(members::contains)
+                            .forEach(member -> users.add((String) member));
+                }
+            }
+        }
+        log.debug("Finished 'checkUsersActiveTeams '{}' teams' from DB at date '{}'. Users in active teams <{}>",
+                members.toArray(), actualDate, users.toArray());
+        return new ArrayList<>(users);
+    }
+
+    @Override
+    public List<Team> getAllActiveTeams(Date actualDate) {
+        return commandMetrics.time("getAllActiveTeams", () -> {
+            log.debug("Started 'Get all active teams' from DB at date '{}'", actualDate);
+            List<Team> teams = findWithArchived(new Query(activeTeamsCriteria(actualDate)), actualDate);
+            log.debug("Finished 'Get all active teams' from DB at date '{}'. Teams <{}>", actualDate, teams);
+            return teams;
+        });
+    }
+
+    /**
+     * Passes active teams to consumer one by one while iterating DB cursor, so only one batch of teams
+     * is held in memory.
+     *
+     * @return count of passed teams
+     */
+    @Override
+    public long streamAllActiveTeams(Date actualDate, Consumer<Team> consumer) {
+        return commandMetrics.time("streamAllActiveTeams", () -> {
+            log.debug("Started 'Stream all active teams' from DB at date '{}'", actualDate);
+            long count = 0;
+            try (DBCursor cursor = mongoTemplate.getCollection(mongoCollectionName)
+                    .find(new Query(activeTeamsCriteria(actualDate)).getQueryObject())
+                    .setReadPreference(readsFromPrimary() ? ReadPreference.primary() : readPreference)
+                    .batchSize(streamingBatchSize)) {
+                for (DBObject team : cursor) {
+                    consumer.accept(mongoTemplate.getConverter().read(Team.class, team));
+                    count++;
+                }
+            }
+            log.debug("Finished 'Stream all active teams' from DB at date '{}'. Teams size '{}'", actualDate, count);
+            return count;
+        });
+    }
+
+    @Override
+    public List<Team> getActiveTeamsPage(Date actualDate, String afterId, int size) {
+        return commandMetrics.time("getActiveTeamsPage", () -> {
+            log.debug("Started 'Get active teams page' after '{}' from DB at date '{}'", afterId, actualDate);
+            Query query = new Query(activeTeamsPageCriteria(actualDate, afterId))
+                    .with(new Sort(Sort.Direction.ASC, "_id"))
+                    .limit(size);
+            List<Team> teams = readTemplate().find(query, Team.class, mongoCollectionName);
+            log.debug("Finished 'Get active teams page' after '{}' from DB at date '{}'. Teams size '{}'",
+                    afterId, actualDate, teams.size());
+            return teams;
+        });
+    }
+
+    /**
+     * Reads teams and archive collections with members, activate date and id index and without keeper who
+     * activated teams.
+     */
+    @Override
+    public List<Team> getUserTeamsTimeline(String uuid, Date afterActivateDate, String afterId, int size) {
+        return commandMetrics.time("getUserTeamsTimeline", () -> {
+            log.debug("Started 'Get user teams timeline' '{}' after '{}' '{}' from DB", uuid, afterActivateDate,
+                    afterId);
+            Query query = new Query(userTeamsTimelineCriteria(uuid, afterActivateDate, afterId))
+                    .with(new Sort(Sort.Direction.ASC, "activateDate", "_id"))
+                    .limit(size);
+            query.fields().include("members").include("activateDate").include("deactivateDate");
+            Comparator<Team> order = Comparator.comparing(Team::getActivateDate).thenComparing(Team::getId);
+            Map<String, Team> teams = new LinkedHashMap<>();
+            Stream.concat(readTemplate().find(query, Team.class, mongoCollectionName).stream(),
+                    readTemplate().find(query, Team.class, archiveCollectionName).stream())
+                    .sorted(order)
+                    .forEach(team -> teams.putIfAbsent(team.getId(), team));
+            List<Team> timeline = teams.values().stream().limit(size).collect(Collectors.toList());
+            log.debug("Finished 'Get user teams timeline' '{}' from DB. Teams size '{}'", uuid, timeline.size());
+            return timeline;
+        });
+    }
+
+    /**
+     * Reads archive collection too, if the period starts before archive date.
+     */
+    @Override
+    public List<Team> getTeamsActiveBetween(String uuid, Date from, Date to) {
+        return commandMetrics.time("getTeamsActiveBetween", () -> {
+            log.debug("Started 'Get teams active between' '{}' and '{}' of user '{}' from DB", from, to, uuid);
+            List<Team> teams = findWithArchived(new Query(teamsActiveBetweenCriteria(uuid, from, to)), from);
+            log.debug("Finished 'Get teams active between' '{}' and '{}' of user '{}' from DB. Teams size '{}'",
+                    from, to, uuid, teams.size());
+            return teams;
+        });
+    }
+
+    @Override
+    public List<Team> getNotDeactivatedTeams(Date actualDate) {
+        return commandMetrics.time("getNotDeactivatedTeams", () -> {
+            log.debug("Started 'Get not deactivated teams' from DB at date '{}'", actualDate);
+            List<Team> teams = mongoTemplate.find(new Query(Criteria.where("deactivateDate").gt(actualDate)),
+                    Team.class, mongoCollectionName);
+            log.debug("Finished 'Get not deactivated teams' from DB at date '{}'. Teams size '{}'",
+                    actualDate, teams.size());
+            return teams;
+        });
+    }
+
+    /**
+     * Saves team directly or, in write-behind mode, waits until the batch with the team is written. If the team
+     * is not taken into a batch during save timeout its write-behind is cancelled and save fails, so a failed save
+     * is never written later. If write-behind queue is full or write-behind is shut down the team is saved directly.
+     */
+    @Override
+    public Team saveTeam(Team team) {
+        return commandMetrics.time("saveTeam", () -> {
+            log.debug("Started 'Save team' '{}' into DB ", team.toString());
+            TeamWriteBehind.PendingSave queued = writeBehind == null ? null : writeBehind.save(team);
+            if (queued == null) {
+                mongoTemplate.save(team, mongoCollectionName);
+                incrementVersion();
+            } else {
+                try {
+                    writeBehind.await(queued, writeBehindSaveTimeoutMs);
+                } catch (TimeoutException ex) {
+                    throw new IllegalStateException(String.format("Team '%s' is not written behind in '%s' ms",
+                            team.getId(), writeBehindSaveTimeoutMs));
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException(String.format("Save of team '%s' is interrupted", team.getId()));
+                }
+            }
+            lastWriteTime = System.currentTimeMillis();
+            eventPublisher.publishEvent(new TeamSavedEvent(team));
+            log.debug("Finished 'Save team' '{}' into DB ", team.toString());
+            return team;
+        });
+    }
+
+    /**
+     * Inserts teams with one unordered bulk write, so a team which fails doesn't stop insert of others.
+     *
+     * @return inserted teams
+     */
+    @Override
+    public List<Team> insertTeams(List<Team> teams) {
+        return commandMetrics.time("insertTeams", () -> {
+            log.debug("Started 'Insert teams' '{}' into DB", teams.size());
+            if (teams.isEmpty()) {
+                return Collections.emptyList();
+            }
+            Set<Integer> failed = new HashSet<>();
+            lastWriteTime = System.currentTimeMillis();
+            try {
+                mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Team.class, mongoCollectionName)
+                        .insert(teams)
+                        .execute();
+            } catch (BulkOperationException ex) {
+                ex.getErrors().forEach(error -> failed.add(error.getIndex()));
+                log.warn("Teams are not inserted into DB: {}", ex.getErrors());
+            }
+            List<Team> inserted = IntStream.range(0, teams.size())
+                    .filter(index -> !failed.contains(index))
+                    .mapToObj(teams::get)
+                    .collect(Collectors.toList());
+            if (!inserted.isEmpty()) {
+                incrementVersion();
+            }
+            inserted.forEach(team -> eventPublisher.publishEvent(new TeamSavedEvent(team)));
+            log.debug("Finished 'Insert teams' into DB. Teams size '{}'", inserted.size());
+            return inserted;
+        });
+    }
+
+    /**
+     * Sets deactivate date of teams which are not deactivated yet with one unordered bulk write. Only if some
+     * team is not matched, as it was deactivated concurrently, deactivated teams are found by one more query.
+     *
+     * @return deactivated teams
+     */
+    @Override
+    public List<Team> deactivateTeams(List<Team> teams, Date actualDate) {
+        return commandMetrics.time("deactivateTeams", () -> {
+            log.debug("Started 'Deactivate teams' '{}' in DB at date '{}'", teams.size(), actualDate);
+            if (teams.isEmpty()) {
+                return Collections.emptyList();
+            }
+            BulkOperations operations = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Team.class,
+                    mongoCollectionName);
+            teams.forEach(team -> operations.updateOne(
+                    new Query(Criteria.where("_id").is(new ObjectId(team.getId()))
+                            .and("deactivateDate").gt(actualDate)),
+                    new Update().set("deactivateDate", actualDate)));
+            BulkWriteResult result = operations.execute();
+            lastWriteTime = System.currentTimeMillis();
+            List<Team> deactivated = teams;
+            if (result.getMatchedCount() < teams.size()) {
+                List<ObjectId> ids = teams.stream().map(team -> new ObjectId(team.getId()))
+                        .collect(Collectors.toList());
+                Query query = new Query(Criteria.where("_id").in(ids).and("deactivateDate").is(actualDate));
+                query.fields().include("_id");
+                Set<String> deactivatedIds = mongoTemplate.find(query, Team.class, mongoCollectionName).stream()
+                        .map(Team::getId)
+                        .collect(Collectors.toSet());
+                deactivated = teams.stream()
+                        .filter(team -> deactivatedIds.contains(team.getId()))
+                        .collect(Collectors.toList());
+                log.warn("Teams '{}' are deactivated concurrently", teams.size() - deactivated.size());
+            }
+            if (!deactivated.isEmpty()) {
+                incrementVersion();
+            }
+            deactivated.forEach(team -> {
+                team.setDeactivateDate(actualDate);
+                eventPublisher.publishEvent(new TeamSavedEvent(team));
+            });
+            log.debug("Finished 'Deactivate teams' in DB at date '{}'. Teams size '{}'",
+                    actualDate, deactivated.size());
+            return deactivated;
+        });
+    }
+
+    /**
+     * Moves one batch of teams deactivated before given date into archive collection. Teams are upserted into
+     * archive before they are removed from teams collection, so a batch interrupted at any point is completed
+     * by the next call.
+     *
+     * @return count of teams removed from teams collection
+     */
+    @Override
+    public int archiveTeams(Date deactivatedBefore, int batchSize) {
+        return commandMetrics.time("archiveTeams", () -> {
+            log.debug("Started 'Archive teams' deactivated before '{}'", deactivatedBefore);
+            DBObject expired = new Query(archivedTeamsCriteria(deactivatedBefore)).getQueryObject();
+            List<DBObject> teams;
+            try (DBCursor cursor = mongoTemplate.getCollection(mongoCollectionName).find(expired)
+                    .sort(new BasicDBObject("_id", 1))
+                    .limit(batchSize)) {
+                teams = cursor.toArray();
+            }
+            if (teams.isEmpty()) {
+                log.debug("Finished 'Archive teams' deactivated before '{}'. No teams to archive", deactivatedBefore);
+                return 0;
+            }
+            BulkWriteOperation archive = mongoTemplate.getCollection(archiveCollectionName)
+                    .initializeUnorderedBulkOperation();
+            teams.forEach(team -> archive.find(new BasicDBObject("_id", team.get("_id"))).upsert().replaceOne(team));
+            archive.execute();
+            List<Object> ids = teams.stream().map(team -> team.get("_id")).collect(Collectors.toList());
+            expired.put("_id", new BasicDBObject("$in", ids));
+            int removed = mongoTemplate.getCollection(mongoCollectionName).remove(expired).getN();
+            log.debug("Finished 'Archive teams' deactivated before '{}'. Teams size '{}'", deactivatedBefore, removed);
+            return removed;
+        });
+    }
+
+    @Override
+    public Date archiveDate() {
+        return Date.from(Instant.now().minus(archiveAgeDays, ChronoUnit.DAYS));
+    }
+
+    /**
+     * Reads version document with read preference of teams reads, so a version read from a lagging secondary
+     * doesn't get ahead of teams read from it. The version is incremented after teams are written, so it is
+     * replicated after them.
+     *
+     * @return creation date and counter of version document
+     */
+    @Override
+    public String getVersion() {
+        DBObject version = mongoTemplate.getCollection(versionCollectionName)
+                .findOne(new BasicDBObject("_id", VERSION_ID), null,
+                        readsFromPrimary() ? ReadPreference.primary() : readPreference);
+        if (version == null) {
+            return "0-0";
+        }
+        return ((Date) version.get("created")).getTime() + "-" + version.get("version");
+    }
+
+    private void incrementVersion() {
+        mongoTemplate.getCollection(versionCollectionName).update(new BasicDBObject("_id", VERSION_ID),
+                new BasicDBObject("$inc", new BasicDBObject("version", 1L))
+                        .append("$setOnInsert", new BasicDBObject("created", new Date())), true, false);
+    }
+
+    /**
+     * Reads teams collection and, if archived teams could be active at given date, archive collection.
+     * Archived teams were deactivated before archive date, so they are active only at earlier dates. A team
+     * archived between two reads is found in both collections and returned once.
+     */
+    private List<Team> findWithArchived(Query query, Date actualDate) {
+        List<Team> teams = readTemplate().find(query, Team.class, mongoCollectionName);
+        if (actualDate.before(archiveDate())) {
+            Set<String> ids = teams.stream().map(Team::getId).collect(Collectors.toSet());
+            readTemplate().find(query, Team.class, archiveCollectionName).stream()
+                    .filter(team -> !ids.contains(team.getId()))
+                    .forEach(teams::add);
+        }
+        return teams;
+    }
+
+    /**
+     * Tells whether client reads go to primary now: read preference is primary or this instance wrote
+     * into teams collection during read-your-writes window. The window is per instance and by time only, the
+     * driver doesn't track operation time of writes, so it is best-effort and sends reads of all clients of
+     * this instance to primary after any write.
+     */
+    boolean readsFromPrimary() {
+        return readPreference.equals(ReadPreference.primary()) ||
+                System.currentTimeMillis() - lastWriteTime < readYourWritesMs;
+    }
+
+    private MongoTemplate readTemplate() {
+        return readsFromPrimary() ? mongoTemplate : readTemplate;
+    }
+
+    static WriteConcernResolver writeConcernResolver(String collectionName, WriteConcern writeConcern) {
+        return action -> collectionName.equals(action.getCollectionName()) ? writeConcern :
+                action.getDefaultWriteConcern();
+    }
+
+    static Criteria userActiveTeamsCriteria(String uuid, Date actualDate) {
+        return Criteria.where("deactivateDate").gt(actualDate).and("members").is(uuid).and("activateDate").lte(actualDate);
+    }
+
+    static Criteria usersActiveTeamsCriteria(Set<String> members, Date actualDate) {
+        return Criteria.where("deactivateDate").gt(actualDate).and("activateDate").lte(actualDate)
+                .and("members").in(members);
+    }
+
+    static Criteria activeTeamsCriteria(Date actualDate) {
+        return Criteria.where("deactivateDate").gt(actualDate).and("activateDate").lte(actualDate);
+    }
+
+    static Criteria teamsActiveBetweenCriteria(String uuid, Date from, Date to) {
+        Criteria criteria = Criteria.where("deactivateDate").gt(from);
+        if (uuid != null) {
+            criteria = criteria.and("members").is(uuid);
+        }
+        return criteria.and("activateDate").lt(to);
+    }
+
+    static Criteria userTeamsTimelineCriteria(String uuid, Date afterActivateDate, String afterId) {
+        Criteria criteria = Criteria.where("members").is(uuid);
+        if (afterActivateDate == null) {
+            return criteria;
+        }
+        return criteria.orOperator(Criteria.where("activateDate").gt(afterActivateDate),
+                Criteria.where("activateDate").is(afterActivateDate).and("_id").gt(new ObjectId(afterId)));
+    }
+
+    static Criteria archivedTeamsCriteria(Date deactivatedBefore) {
+        return Criteria.where("deactivateDate").lt(deactivatedBefore);
+    }
+
+    static Criteria activeTeamsPageCriteria(Date actualDate, String afterId) {
+        Criteria criteria = activeTeamsCriteria(actualDate);
+        return afterId == null ? criteria : criteria.and("_id").gt(new ObjectId(afterId));
+    }
+
+    public enum CheckStrategy {
+        AGGREGATION, FIND
+    }
+
+    @Getter
+    private class Member {
+        public String uuid;
+    }
+}
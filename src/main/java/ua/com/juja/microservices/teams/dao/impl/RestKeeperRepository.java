@@ -1,28 +1,52 @@
 package ua.com.juja.microservices.teams.dao.impl;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.context.annotation.Profile;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Repository;
 import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 import ua.com.juja.microservices.teams.dao.KeeperRepository;
+import ua.com.juja.microservices.teams.entity.Keeper;
 import ua.com.juja.microservices.teams.exceptions.ApiErrorMessage;
 import ua.com.juja.microservices.teams.exceptions.KeeperExchangeException;
+import ua.com.juja.microservices.teams.exceptions.KeeperServiceUnavailableException;
 import ua.com.juja.microservices.teams.utils.Utils;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import java.time.Duration;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
+ * Requests to keepers service go through a circuit breaker and a semaphore bulkhead, so a degraded keepers
+ * service fails fast instead of holding request threads. While the keepers service is unavailable the last
+ * directions received for a keeper may be used instead. They are kept for as many keepers as directions of keepers
+ * cache, but much longer than its ttl, so they outlive cached directions during a long outage.
+ *
  * @author Ivan Shapovalov
  */
 @Repository
 @Profile({"production", "default"})
-public class RestKeeperRepository implements KeeperRepository {
+public class RestKeeperRepository implements KeeperRepository, PublicMetrics {
     private final Logger logger = LoggerFactory.getLogger(this.getClass());
 
     @Inject
@@ -30,9 +54,107 @@ public class RestKeeperRepository implements KeeperRepository {
 
     @Value("${keepers.endpoint.getDirections}")
     private String keepersGetDirectionsUrl;
+    @Value("${keepers.endpoint.getDirectionKeepers}")
+    private String keepersGetDirectionKeepersUrl;
+
+    @Value("${keepers.circuitBreaker.failureRateThreshold}")
+    private float failureRateThreshold;
+    @Value("${keepers.circuitBreaker.slowCallRateThreshold}")
+    private float slowCallRateThreshold;
+    @Value("${keepers.circuitBreaker.slowCallDurationMs}")
+    private long slowCallDurationMs;
+    @Value("${keepers.circuitBreaker.slidingWindowSize}")
+    private int slidingWindowSize;
+    @Value("${keepers.circuitBreaker.minimumNumberOfCalls}")
+    private int minimumNumberOfCalls;
+    @Value("${keepers.circuitBreaker.openStateSeconds}")
+    private long openStateSeconds;
+    @Value("${keepers.circuitBreaker.halfOpenCalls}")
+    private int halfOpenCalls;
+    @Value("${keepers.circuitBreaker.fallbackToLastKnown}")
+    private boolean fallbackToLastKnown;
+    @Value("${keepers.bulkhead.maxConcurrentCalls}")
+    private int maxConcurrentCalls;
+    @Value("${keepers.bulkhead.maxWaitMs}")
+    private long maxWaitMs;
+    @Value("${keepers.cache.maxSize}")
+    private long lastKnownMaxSize;
+    @Value("${keepers.circuitBreaker.lastKnownTtlSeconds}")
+    private long lastKnownTtlSeconds;
+
+    private CircuitBreaker circuitBreaker;
+    private Bulkhead bulkhead;
+    private Cache<String, List<String>> lastKnownDirections;
+
+    @PostConstruct
+    public void init() {
+        circuitBreaker = CircuitBreaker.of("keepers", CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slowCallDurationThreshold(Duration.ofMillis(slowCallDurationMs))
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(minimumNumberOfCalls)
+                .waitDurationInOpenState(Duration.ofSeconds(openStateSeconds))
+                .permittedNumberOfCallsInHalfOpenState(halfOpenCalls)
+                .recordExceptions(ResourceAccessException.class, HttpServerErrorException.class)
+                .ignoreExceptions(BulkheadFullException.class)
+                .build());
+        circuitBreaker.getEventPublisher().onStateTransition(event ->
+                logger.warn("Keepers circuit breaker changed state: {}", event.getStateTransition()));
+        bulkhead = Bulkhead.of("keepers", BulkheadConfig.custom()
+                .maxConcurrentCalls(maxConcurrentCalls)
+                .maxWaitDuration(Duration.ofMillis(maxWaitMs))
+                .build());
+        lastKnownDirections = Caffeine.newBuilder()
+                .maximumSize(lastKnownMaxSize)
+                .expireAfterWrite(lastKnownTtlSeconds, TimeUnit.SECONDS)
+                .build();
+    }
 
     @Override
     public List<String> getDirections(String uuid) {
+        Supplier<List<String>> request = CircuitBreaker.decorateSupplier(circuitBreaker,
+                Bulkhead.decorateSupplier(bulkhead, () -> requestDirections(uuid)));
+        List<String> directions;
+        try {
+            directions = request.get();
+        } catch (CallNotPermittedException | BulkheadFullException | ResourceAccessException |
+                HttpServerErrorException ex) {
+            logger.warn("Keepers service is unavailable: [{}]", ex.getMessage());
+            return lastKnownDirections(uuid, ex);
+        }
+        if (fallbackToLastKnown && !directions.isEmpty()) {
+            lastKnownDirections.put(uuid, directions);
+        }
+        return directions;
+    }
+
+    @Override
+    public List<Keeper> getDirectionKeepers(String direction) {
+        Supplier<List<Keeper>> request = CircuitBreaker.decorateSupplier(circuitBreaker,
+                Bulkhead.decorateSupplier(bulkhead, () -> requestDirectionKeepers(direction)));
+        try {
+            return request.get();
+        } catch (CallNotPermittedException | BulkheadFullException | ResourceAccessException |
+                HttpServerErrorException ex) {
+            logger.warn("Keepers service is unavailable: [{}]", ex.getMessage());
+            throw new KeeperServiceUnavailableException("Keepers service is unavailable: " + ex.getMessage());
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CircuitBreaker.Metrics breakerMetrics = circuitBreaker.getMetrics();
+        return Arrays.asList(
+                new Metric<>("keepers.circuitBreaker.state", circuitBreaker.getState().getOrder()),
+                new Metric<>("keepers.circuitBreaker.failureRate", breakerMetrics.getFailureRate()),
+                new Metric<>("keepers.circuitBreaker.slowCallRate", breakerMetrics.getSlowCallRate()),
+                new Metric<>("keepers.circuitBreaker.notPermittedCalls", breakerMetrics.getNumberOfNotPermittedCalls()),
+                new Metric<>("keepers.bulkhead.availableCalls", bulkhead.getMetrics().getAvailableConcurrentCalls()),
+                new Metric<>("keepers.lastKnown.size", lastKnownDirections.estimatedSize()));
+    }
+
+    private List<String> requestDirections(String uuid) {
         List<String> directions;
         String url = keepersGetDirectionsUrl + "/" + uuid;
         logger.debug("Send request to keepers repository '{}'", url);
@@ -47,4 +169,29 @@ public class RestKeeperRepository implements KeeperRepository {
         logger.debug("Received list of keeper's '{}' directions: {}", uuid, directions);
         return directions;
     }
-}
\ No newline at end of file
+
+    private List<Keeper> requestDirectionKeepers(String direction) {
+        List<Keeper> keepers;
+        String url = keepersGetDirectionKeepersUrl + "/" + direction;
+        logger.debug("Send request to keepers repository '{}'", url);
+        try {
+            ResponseEntity<Keeper[]> response = this.restTemplate.getForEntity(url, Keeper[].class);
+            keepers = Arrays.asList(response.getBody());
+        } catch (HttpClientErrorException ex) {
+            ApiErrorMessage error = Utils.convertToApiError(ex);
+            logger.warn("Keepers service returned error: [{}]", ex.getMessage());
+            throw new KeeperExchangeException(error, "Keepers service returns error: " + ex.getMessage());
+        }
+        logger.debug("Received '{}' keepers of direction '{}'", keepers.size(), direction);
+        return keepers;
+    }
+
+    private List<String> lastKnownDirections(String uuid, Exception cause) {
+        List<String> directions = fallbackToLastKnown ? lastKnownDirections.getIfPresent(uuid) : null;
+        if (directions == null) {
+            throw new KeeperServiceUnavailableException("Keepers service is unavailable: " + cause.getMessage());
+        }
+        logger.warn("Use last known keeper's '{}' directions: {}", uuid, directions);
+        return directions;
+    }
+}
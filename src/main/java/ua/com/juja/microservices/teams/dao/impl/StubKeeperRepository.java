@@ -0,0 +1,50 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Repository;
+import ua.com.juja.microservices.teams.dao.KeeperRepository;
+import ua.com.juja.microservices.teams.entity.Keeper;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Keepers repository for local runs and tests without keepers service. Every configured keeper has
+ * only teams direction.
+ *
+ * @author Ivan Shapovalov
+ */
+@Repository
+@Profile("local")
+public class StubKeeperRepository implements KeeperRepository {
+    private final Logger logger = LoggerFactory.getLogger(this.getClass());
+
+    @Value("${keepers.stub.teamsKeepers}")
+    private String[] teamsKeepers;
+
+    @Value("${keepers.direction.teams}")
+    private String teamsDirection;
+
+    @Override
+    public List<String> getDirections(String uuid) {
+        List<String> directions = Arrays.asList(teamsKeepers).contains(uuid) ?
+                Collections.singletonList(teamsDirection) : Collections.emptyList();
+        logger.debug("Stub keeper's '{}' directions: {}", uuid, directions);
+        return directions;
+    }
+
+    @Override
+    public List<Keeper> getDirectionKeepers(String direction) {
+        if (!teamsDirection.equalsIgnoreCase(direction)) {
+            return Collections.emptyList();
+        }
+        return Arrays.stream(teamsKeepers)
+                .map(uuid -> new Keeper(uuid, Collections.singletonList(teamsDirection)))
+                .collect(Collectors.toList());
+    }
+}
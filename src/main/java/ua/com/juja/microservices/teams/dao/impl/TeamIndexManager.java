@@ -0,0 +1,151 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import com.mongodb.DBObject;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.IndexOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ensures indexes used by {@link MongoTeamRepository} queries on startup and checks with explain() that every
+ * query is backed by an index. A query planned as collection scan fails the startup or is logged as
+ * warning, depending on configuration.
+ *
+ * @author Ivan Shapovalov
+ */
+@Component
+@Profile("!journal")
+@Slf4j
+public class TeamIndexManager {
+    static final String COLLECTION_SCAN = "COLLSCAN";
+
+    @Value("${spring.data.mongodb.collection}")
+    private String mongoCollectionName;
+    @Value("${spring.data.mongodb.membershipCollection}")
+    private String membershipCollectionName;
+    @Value("${spring.data.mongodb.archiveCollection}")
+    private String archiveCollectionName;
+    @Value("${teams.indexes.enabled}")
+    private boolean indexesEnabled;
+    @Value("${teams.indexes.explain}")
+    private boolean explainEnabled;
+    @Value("${teams.indexes.failOnCollectionScan}")
+    private boolean failOnCollectionScan;
+    @Inject
+    private MongoTemplate mongoTemplate;
+
+    @PostConstruct
+    public void init() {
+        if (!indexesEnabled) {
+            log.info("Teams indexes management is disabled");
+            return;
+        }
+        ensureIndexes();
+        if (explainEnabled) {
+            explainQueries();
+        }
+    }
+
+    public void ensureIndexes() {
+        ensureTeamsIndexes(mongoCollectionName);
+        ensureTeamsIndexes(archiveCollectionName);
+        IndexOperations membershipIndexOperations = mongoTemplate.indexOps(membershipCollectionName);
+        membershipIndexOperations.ensureIndex(new Index().on("teamId", Sort.Direction.ASC).background());
+        log.info("Ensured indexes of collection '{}': {}", membershipCollectionName,
+                membershipIndexOperations.getIndexInfo());
+    }
+
+    private void ensureTeamsIndexes(String collectionName) {
+        IndexOperations indexOperations = mongoTemplate.indexOps(collectionName);
+        indexOperations.ensureIndex(new Index()
+                .on("members", Sort.Direction.ASC)
+                .on("deactivateDate", Sort.Direction.ASC)
+                .on("activateDate", Sort.Direction.ASC)
+                .background());
+        indexOperations.ensureIndex(new Index()
+                .on("deactivateDate", Sort.Direction.ASC)
+                .on("activateDate", Sort.Direction.ASC)
+                .background());
+        indexOperations.ensureIndex(new Index()
+                .on("members", Sort.Direction.ASC)
+                .on("activateDate", Sort.Direction.ASC)
+                .on("_id", Sort.Direction.ASC)
+                .background());
+        log.info("Ensured indexes of collection '{}': {}", collectionName, indexOperations.getIndexInfo());
+    }
+
+    public void explainQueries() {
+        Date actualDate = new Date();
+        Map<String, Criteria> queries = new LinkedHashMap<>();
+        queries.put("getUserActiveTeams", MongoTeamRepository.userActiveTeamsCriteria("uuid", actualDate));
+        queries.put("checkUsersActiveTeams",
+                MongoTeamRepository.usersActiveTeamsCriteria(Collections.singleton("uuid"), actualDate));
+        queries.put("getAllActiveTeams", MongoTeamRepository.activeTeamsCriteria(actualDate));
+        queries.put("getActiveTeamsPage",
+                MongoTeamRepository.activeTeamsPageCriteria(actualDate, new ObjectId(actualDate).toHexString()));
+        queries.put("getTeamsActiveBetween",
+                MongoTeamRepository.teamsActiveBetweenCriteria("uuid", actualDate, actualDate));
+        queries.put("getUserTeamsTimeline", MongoTeamRepository.userTeamsTimelineCriteria("uuid", actualDate,
+                new ObjectId(actualDate).toHexString()));
+        queries.put("archiveTeams", MongoTeamRepository.archivedTeamsCriteria(actualDate));
+        queries.forEach(this::explainQuery);
+    }
+
+    private void explainQuery(String name, Criteria criteria) {
+        DBObject winningPlan;
+        try {
+            DBObject explain = mongoTemplate.getCollection(mongoCollectionName)
+                    .find(new Query(criteria).getQueryObject()).explain();
+            DBObject queryPlanner = (DBObject) explain.get("queryPlanner");
+            winningPlan = queryPlanner == null ? null : (DBObject) queryPlanner.get("winningPlan");
+        } catch (RuntimeException ex) {
+            log.warn("Failed to explain query '{}': [{}]", name, ex.getMessage());
+            return;
+        }
+        if (winningPlan == null) {
+            log.warn("Query '{}' has no winning plan in explain, index usage is unknown", name);
+            return;
+        }
+        log.info("Query '{}' winning plan: {}", name, winningPlan);
+        if (isCollectionScan(winningPlan)) {
+            if (failOnCollectionScan) {
+                throw new IllegalStateException(String.format("Query '%s' is not backed by index: %s",
+                        name, winningPlan));
+            }
+            log.warn("Query '{}' is not backed by index", name);
+        }
+    }
+
+    static boolean isCollectionScan(DBObject plan) {
+        if (plan == null) {
+            return false;
+        }
+        if (COLLECTION_SCAN.equals(plan.get("stage")) || isCollectionScan((DBObject) plan.get("inputStage"))) {
+            return true;
+        }
+        Object inputStages = plan.get("inputStages");
+        if (inputStages instanceof List) {
+            for (Object inputStage : (List<?>) inputStages) {
+                if (isCollectionScan((DBObject) inputStage)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,325 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import lombok.extern.slf4j.Slf4j;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of team states with snapshots. Every saved state of a team is appended as record
+ * {@code [int length][int crc32][team]} to the log of current generation, which is a memory-mapped file grown by
+ * mapping one more segment at its end. State is recovered by loading the latest snapshot and replaying logs of
+ * its generation and later ones, the latest state of a team wins. Replay stops at the first record which is
+ * incomplete or doesn't match its checksum, as it is a torn write of a crash, and the log is cut there.
+ * <p>
+ * Snapshot starts a new log generation, so appends continue while snapshot is written. Snapshot is written into
+ * temporary file and moved over the previous one atomically, only then logs of older generations are removed.
+ * A crash at any step leaves a snapshot with all logs written after it.
+ *
+ * @author Ivan Shapovalov
+ */
+@Slf4j
+class TeamJournal implements AutoCloseable {
+    private static final String SNAPSHOT_FILE = "teams.snapshot";
+    private static final String LOG_PREFIX = "teams-";
+    private static final String LOG_SUFFIX = ".log";
+    private static final int SNAPSHOT_MAGIC = 0x7EA35A0F;
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final boolean fsync;
+
+    private long generation;
+    private FileChannel logChannel;
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private long records;
+
+    TeamJournal(Path directory, int segmentBytes, boolean fsync) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Recovers teams from snapshot and logs and opens log of the last generation for appends.
+     *
+     * @return the latest states of teams in order of their first save
+     */
+    synchronized List<Team> open() throws IOException {
+        Files.createDirectories(directory);
+        Map<String, Team> teams = new LinkedHashMap<>();
+        long snapshotGeneration = readSnapshot(teams);
+        Map<Long, Path> logs = findLogs();
+        generation = snapshotGeneration;
+        for (Map.Entry<Long, Path> logFile : logs.entrySet()) {
+            if (logFile.getKey() < snapshotGeneration) {
+                Files.delete(logFile.getValue());
+            } else {
+                replay(logFile.getValue(), teams);
+                generation = logFile.getKey();
+            }
+        }
+        openLog();
+        log.info("Teams journal '{}' is opened at generation '{}'. Teams size '{}'", directory, generation,
+                teams.size());
+        return new ArrayList<>(teams.values());
+    }
+
+    /**
+     * Appends state of team to the log, and forces it to disk if fsync is enabled.
+     */
+    synchronized void append(Team team) {
+        byte[] record = serialize(team);
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        try {
+            ensureCapacity(RECORD_HEADER_BYTES + record.length);
+            segment.putInt(record.length);
+            segment.putInt((int) crc.getValue());
+            segment.put(record);
+            if (fsync) {
+                segment.force();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Team is not written into journal", ex);
+        }
+        records++;
+    }
+
+    /**
+     * Starts the next log generation. States appended later are not in the snapshot of given generation.
+     *
+     * @return generation of snapshot which must contain all states appended before this call
+     */
+    synchronized long rotate() throws IOException {
+        closeLog();
+        generation++;
+        openLog();
+        return generation;
+    }
+
+    /**
+     * Writes snapshot of teams which contains all states appended before generation was started and removes
+     * logs of older generations.
+     */
+    void snapshot(long snapshotGeneration, Collection<Team> teams) throws IOException {
+        Path tmp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(snapshotGeneration);
+            out.writeInt(teams.size());
+            for (Team team : teams) {
+                byte[] record = serialize(team);
+                CRC32 crc = new CRC32();
+                crc.update(record);
+                out.writeInt(record.length);
+                out.writeInt((int) crc.getValue());
+                out.write(record);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(tmp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        for (Map.Entry<Long, Path> logFile : findLogs().entrySet()) {
+            if (logFile.getKey() < snapshotGeneration) {
+                Files.deleteIfExists(logFile.getValue());
+            }
+        }
+        log.info("Teams snapshot of generation '{}' is written. Teams size '{}'", snapshotGeneration, teams.size());
+    }
+
+    /**
+     * @return count of records appended since journal was opened
+     */
+    synchronized long getRecords() {
+        return records;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeLog();
+    }
+
+    private long readSnapshot(Map<String, Team> teams) throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        try (InputStream file = Files.newInputStream(snapshot);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(String.format("File '%s' is not teams snapshot", snapshot));
+            }
+            long snapshotGeneration = in.readLong();
+            int size = in.readInt();
+            for (int i = 0; i < size; i++) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                byte[] record = new byte[length];
+                in.readFully(record);
+                CRC32 crc = new CRC32();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    throw new IOException(String.format("Teams snapshot '%s' is corrupted at team '%d'", snapshot, i));
+                }
+                Team team = deserialize(record);
+                teams.put(team.getId(), team);
+            }
+            return snapshotGeneration;
+        } catch (NoSuchFileException ex) {
+            return 0;
+        }
+    }
+
+    private void replay(Path logFile, Map<String, Team> teams) throws IOException {
+        long valid = 0;
+        int replayed = 0;
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = channel.size();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+            while (valid + RECORD_HEADER_BYTES <= size) {
+                int length = in.readInt();
+                if (length <= 0 || valid + RECORD_HEADER_BYTES + length > size) {
+                    break;
+                }
+                int checksum = in.readInt();
+                byte[] record = new byte[length];
+                in.readFully(record);
+                CRC32 crc = new CRC32();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("Teams journal '{}' has corrupted record at '{}'", logFile, valid);
+                    break;
+                }
+                Team team = deserialize(record);
+                teams.put(team.getId(), team);
+                valid += RECORD_HEADER_BYTES + length;
+                replayed++;
+            }
+            if (size > valid) {
+                channel.truncate(valid);
+            }
+        }
+        log.debug("Replayed teams journal '{}'. Records '{}'", logFile, replayed);
+    }
+
+    private Map<Long, Path> findLogs() throws IOException {
+        Map<Long, Path> logs = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, LOG_PREFIX + "*" + LOG_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                String number = name.substring(LOG_PREFIX.length(), name.length() - LOG_SUFFIX.length());
+                if (number.matches("\\d{1,18}")) {
+                    logs.put(Long.parseLong(number), file);
+                }
+            }
+        }
+        return logs;
+    }
+
+    private void openLog() throws IOException {
+        logChannel = FileChannel.open(directory.resolve(String.format("%s%d%s", LOG_PREFIX, generation, LOG_SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segmentStart = logChannel.size();
+        segment = logChannel.map(FileChannel.MapMode.READ_WRITE, segmentStart, segmentBytes);
+    }
+
+    /**
+     * Maps the next segment from the end of written records when record doesn't fit into current one. Mapped
+     * but unwritten bytes are zeros, so replay stops at the end of written records.
+     */
+    private void ensureCapacity(int bytes) throws IOException {
+        if (segment.remaining() >= bytes) {
+            return;
+        }
+        segment.force();
+        segmentStart += segment.position();
+        segment = logChannel.map(FileChannel.MapMode.READ_WRITE, segmentStart, Math.max(segmentBytes, bytes));
+    }
+
+    private void closeLog() throws IOException {
+        if (logChannel == null) {
+            return;
+        }
+        segment.force();
+        long written = segmentStart + segment.position();
+        segment = null;
+        logChannel.truncate(written);
+        logChannel.close();
+        logChannel = null;
+    }
+
+    static byte[] serialize(Team team) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeUTF(team.getId());
+            writeNullable(out, team.getFrom());
+            out.writeInt(team.getMembers().size());
+            for (String member : team.getMembers()) {
+                out.writeUTF(member);
+            }
+            out.writeLong(team.getActivateDate().getTime());
+            out.writeLong(team.getDeactivateDate().getTime());
+            return bytes.toByteArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    static Team deserialize(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        String id = in.readUTF();
+        String from = readNullable(in);
+        int size = in.readInt();
+        Set<String> members = new HashSet<>();
+        for (int i = 0; i < size; i++) {
+            members.add(in.readUTF());
+        }
+        Team team = new Team(from, members);
+        team.setId(id);
+        team.setActivateDate(new Date(in.readLong()));
+        team.setDeactivateDate(new Date(in.readLong()));
+        return team;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
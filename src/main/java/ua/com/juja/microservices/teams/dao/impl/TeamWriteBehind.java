@@ -0,0 +1,260 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.WriteConcern;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Write-behind of saved teams. Saves are queued into bounded queue and written by one thread with unordered
+ * bulk upserts of up to batch size teams, a batch is flushed when it is full or flush delay after its first
+ * team has passed. Every save is completed only when its batch is written, so caller still waits for the
+ * write, while concurrent saves share one round trip.
+ * <p>
+ * A save which caller stops waiting for is cancelled if the writer hasn't taken it into a batch yet, so a failed
+ * save is never written later. A save which is taken already is waited for until its batch is written.
+ * <p>
+ * When queue is full a save waits for free place up to offer timeout and then is rejected, so callers write
+ * it themselves and load is slowed down instead of queue growing.
+ *
+ * @author Ivan Shapovalov
+ */
+@Slf4j
+class TeamWriteBehind {
+    private static final long IDLE_POLL_MS = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final String collectionName;
+    private final WriteConcern writeConcern;
+    private final MongoCommandMetrics commandMetrics;
+    private final int batchSize;
+    private final long flushMs;
+    private final long offerTimeoutMs;
+    private final Runnable afterBatch;
+    private final BlockingQueue<PendingSave> queue;
+    private final Thread writer;
+    private final AtomicLong batches = new AtomicLong();
+    private volatile boolean running = true;
+
+    /**
+     * @param writeConcern write concern of batches or null for default one of collection
+     * @param afterBatch   called after every written batch, before saves of the batch are completed. Its failure
+     *                     is only logged, as teams of the batch are written already
+     */
+    TeamWriteBehind(MongoTemplate mongoTemplate, String collectionName, WriteConcern writeConcern,
+                    MongoCommandMetrics commandMetrics, int batchSize, long flushMs, int queueCapacity,
+                    long offerTimeoutMs, Runnable afterBatch) {
+        this.mongoTemplate = mongoTemplate;
+        this.collectionName = collectionName;
+        this.writeConcern = writeConcern;
+        this.commandMetrics = commandMetrics;
+        this.batchSize = batchSize;
+        this.flushMs = flushMs;
+        this.offerTimeoutMs = offerTimeoutMs;
+        this.afterBatch = afterBatch;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.writer = new Thread(this::writeBatches, "teams-write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues team to be written, team without id gets new id.
+     *
+     * @return save completed when team is written or null if queue stays full during offer timeout
+     */
+    PendingSave save(Team team) {
+        if (team.getId() == null) {
+            team.setId(new ObjectId().toHexString());
+        }
+        PendingSave save = new PendingSave(team);
+        try {
+            if (running && queue.offer(save, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                if (running || !queue.remove(save)) {
+                    return save;
+                }
+                log.debug("Write-behind of teams is shut down, team '{}' is saved directly", team.getId());
+                return null;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        log.warn("Write-behind queue of teams is full, team '{}' is saved directly", team.getId());
+        return null;
+    }
+
+    /**
+     * Waits until queued save is written, at most timeout. If the save is not taken into a batch during timeout
+     * or waiting is interrupted, the save is cancelled and is never written. Otherwise the batch with the save
+     * is waited for, so the caller always knows whether the team is written.
+     *
+     * @return written team
+     * @throws TimeoutException if the save is cancelled as it is not written during timeout
+     */
+    Team await(PendingSave save, long timeoutMs) throws InterruptedException, TimeoutException {
+        try {
+            return save.get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException ex) {
+            throw failure(ex.getCause());
+        } catch (TimeoutException | InterruptedException ex) {
+            if (save.cancelQueued()) {
+                queue.remove(save);
+                log.debug("Write-behind of team '{}' is cancelled", save.team.getId());
+                throw ex;
+            }
+            log.debug("Team '{}' is being written behind, wait for its batch", save.team.getId());
+            try {
+                return save.join();
+            } catch (CompletionException failure) {
+                throw failure(failure.getCause());
+            } finally {
+                if (ex instanceof InterruptedException) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    long getBatches() {
+        return batches.get();
+    }
+
+    /**
+     * Stops accepting saves and writes teams which are queued already. A save queued after the queue is drained
+     * takes itself back from the queue and is rejected, as it sees that write-behind is stopped.
+     */
+    void shutdown() throws InterruptedException {
+        running = false;
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+        List<PendingSave> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            write(rest);
+        }
+    }
+
+    private void writeBatches() {
+        List<PendingSave> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                PendingSave first = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long waitNanos = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || waitNanos <= 0) {
+                        break;
+                    }
+                    PendingSave next = queue.poll(waitNanos, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException ex) {
+                log.debug("Write-behind of teams is interrupted");
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<PendingSave> batch) {
+        batch.removeIf(save -> !save.take());
+        if (batch.isEmpty()) {
+            return;
+        }
+        log.debug("Started 'Write teams batch' '{}' into DB", batch.size());
+        try {
+            commandMetrics.run("saveTeamBatch", () -> writeBatch(batch));
+        } catch (RuntimeException ex) {
+            log.warn("Teams batch '{}' is not saved into DB: [{}]", batch.size(), ex.getMessage());
+            batch.forEach(save -> save.completeExceptionally(ex));
+        }
+    }
+
+    private void writeBatch(List<PendingSave> batch) {
+        BulkWriteOperation bulk = mongoTemplate.getCollection(collectionName).initializeUnorderedBulkOperation();
+        for (PendingSave save : batch) {
+            BasicDBObject team = new BasicDBObject();
+            mongoTemplate.getConverter().write(save.team, team);
+            bulk.find(new BasicDBObject("_id", team.get("_id"))).upsert().replaceOne(team);
+        }
+        try {
+            if (writeConcern == null) {
+                bulk.execute();
+            } else {
+                bulk.execute(writeConcern);
+            }
+        } catch (BulkWriteException ex) {
+            for (BulkWriteError error : ex.getWriteErrors()) {
+                batch.get(error.getIndex()).completeExceptionally(
+                        new IllegalStateException(String.format("Team is not saved: %s", error.getMessage())));
+            }
+            if (ex.getWriteConcernError() != null) {
+                IllegalStateException failure = new IllegalStateException(String.format(
+                        "Teams are not saved with write concern: %s", ex.getWriteConcernError().getMessage()));
+                batch.forEach(save -> save.completeExceptionally(failure));
+            }
+            log.warn("Teams are not saved into DB: {}, write concern error: {}", ex.getWriteErrors(),
+                    ex.getWriteConcernError());
+        }
+        try {
+            afterBatch.run();
+        } catch (RuntimeException ex) {
+            log.warn("Teams batch '{}' is saved into DB, but its after batch action failed: [{}]", batch.size(),
+                    ex.getMessage());
+        }
+        batch.forEach(save -> save.complete(save.team));
+        batches.incrementAndGet();
+        log.debug("Finished 'Write teams batch' '{}' into DB", batch.size());
+    }
+
+    private static RuntimeException failure(Throwable cause) {
+        return cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+    }
+
+    /**
+     * Queued save of a team, completed when the team is written. Either the writer takes it into a batch or
+     * the caller cancels it, whichever is first.
+     */
+    static class PendingSave extends CompletableFuture<Team> {
+        private final Team team;
+        private final AtomicBoolean taken = new AtomicBoolean();
+
+        private PendingSave(Team team) {
+            this.team = team;
+        }
+
+        private boolean take() {
+            return taken.compareAndSet(false, true);
+        }
+
+        private boolean cancelQueued() {
+            return take() && cancel(false);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package ua.com.juja.microservices.teams.entity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.ToString;
+import org.hibernate.validator.constraints.NotEmpty;
+import ua.com.juja.microservices.teams.entity.impl.ActivateTeamRequest;
+
+import javax.validation.Valid;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Ivan Shapovalov
+ */
+@ToString
+@Getter
+public class ActivateTeamsRequest {
+
+    @NotEmpty
+    @Valid
+    private List<ActivateTeamRequest> teams;
+
+    @JsonCreator
+    public ActivateTeamsRequest(@JsonProperty("teams") List<ActivateTeamRequest> teams) {
+        this.teams = teams;
+    }
+
+    public List<ActivateTeamRequest> getTeams() {
+        return Collections.unmodifiableList(teams);
+    }
+}
@@ -0,0 +1,33 @@
+package ua.com.juja.microservices.teams.entity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.ToString;
+import org.hibernate.validator.constraints.NotEmpty;
+import ua.com.juja.microservices.teams.entity.impl.DeactivateTeamRequest;
+
+import javax.validation.Valid;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author Ivan Shapovalov
+ */
+@ToString
+@Getter
+public class DeactivateTeamsRequest {
+
+    @NotEmpty
+    @Valid
+    private List<DeactivateTeamRequest> teams;
+
+    @JsonCreator
+    public DeactivateTeamsRequest(@JsonProperty("teams") List<DeactivateTeamRequest> teams) {
+        this.teams = teams;
+    }
+
+    public List<DeactivateTeamRequest> getTeams() {
+        return Collections.unmodifiableList(teams);
+    }
+}
@@ -0,0 +1,35 @@
+package ua.com.juja.microservices.teams.entity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeper with all his directions as returned by keepers service
+ *
+ * @author Ivan Shapovalov
+ */
+@Getter
+@ToString
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Keeper {
+
+    private final String uuid;
+
+    private final List<String> directions;
+
+    @JsonCreator
+    public Keeper(@JsonProperty("uuid") String uuid, @JsonProperty("directions") List<String> directions) {
+        this.uuid = uuid;
+        this.directions = directions == null ? Collections.emptyList() : directions;
+    }
+
+    public List<String> getDirections() {
+        return Collections.unmodifiableList(directions);
+    }
+}
@@ -0,0 +1,39 @@
+package ua.com.juja.microservices.teams.entity;
+
+import lombok.Getter;
+import lombok.ToString;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.PersistenceConstructor;
+
+import java.util.Date;
+
+/**
+ * Membership of user in team. There is only one membership per user, so it reserves the user for the team
+ * until deactivate date of the membership.
+ *
+ * @author Ivan Shapovalov
+ */
+@Getter
+@ToString
+public class Membership {
+    @Id
+    private final String uuid;
+
+    private final String teamId;
+
+    private final Date activateDate;
+
+    private final Date deactivateDate;
+
+    @PersistenceConstructor
+    public Membership(String uuid, String teamId, Date activateDate, Date deactivateDate) {
+        this.uuid = uuid;
+        this.teamId = teamId;
+        this.activateDate = activateDate;
+        this.deactivateDate = deactivateDate;
+    }
+
+    public Membership(String uuid, Team team) {
+        this(uuid, team.getId(), team.getActivateDate(), team.getDeactivateDate());
+    }
+}
@@ -0,0 +1,47 @@
+package ua.com.juja.microservices.teams.entity;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Result of one request of bulk activation or deactivation. Failed result has the message of error
+ * which single request would return.
+ *
+ * @author Ivan Shapovalov
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TeamResult {
+
+    @JsonProperty("status")
+    private final Status status;
+
+    @JsonProperty("team")
+    private final Team team;
+
+    @JsonProperty("message")
+    private final String message;
+
+    private TeamResult(Status status, Team team, String message) {
+        this.status = status;
+        this.team = team;
+        this.message = message;
+    }
+
+    public static TeamResult success(Team team) {
+        return new TeamResult(Status.SUCCESS, team, null);
+    }
+
+    public static TeamResult failed(String message) {
+        return new TeamResult(Status.FAILED, null, message);
+    }
+
+    public enum Status {
+        SUCCESS, FAILED
+    }
+}
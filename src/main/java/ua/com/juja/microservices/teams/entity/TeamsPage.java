@@ -0,0 +1,29 @@
+package ua.com.juja.microservices.teams.entity;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Page of teams. Next page is requested with {@code nextToken}, which is null on the last page.
+ *
+ * @author Ivan Shapovalov
+ */
+@Getter
+@ToString
+public class TeamsPage {
+
+    @JsonProperty("teams")
+    private final List<Team> teams;
+
+    @JsonProperty("nextToken")
+    private final String nextToken;
+
+    public TeamsPage(List<Team> teams, String nextToken) {
+        this.teams = Collections.unmodifiableList(teams);
+        this.nextToken = nextToken;
+    }
+}
@@ -0,0 +1,46 @@
+package ua.com.juja.microservices.teams.entity;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Active team of a user in batch lookup. Team is present only if user is in exactly one active team.
+ *
+ * @author Ivan Shapovalov
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserTeam {
+
+    @JsonProperty("status")
+    private final Status status;
+
+    @JsonProperty("team")
+    private final Team team;
+
+    private UserTeam(Status status, Team team) {
+        this.status = status;
+        this.team = team;
+    }
+
+    public static UserTeam inTeam(Team team) {
+        return new UserTeam(Status.IN_TEAM, team);
+    }
+
+    public static UserTeam notInTeam() {
+        return new UserTeam(Status.NOT_IN_TEAM, null);
+    }
+
+    public static UserTeam inSeveralTeams() {
+        return new UserTeam(Status.IN_SEVERAL_TEAMS, null);
+    }
+
+    public enum Status {
+        IN_TEAM, NOT_IN_TEAM, IN_SEVERAL_TEAMS
+    }
+}
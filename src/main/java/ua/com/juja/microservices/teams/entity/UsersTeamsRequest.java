@@ -0,0 +1,30 @@
+package ua.com.juja.microservices.teams.entity;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.ToString;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * @author Ivan Shapovalov
+ */
+@ToString
+@Getter
+public class UsersTeamsRequest {
+
+    @NotEmpty
+    private Set<String> uuids;
+
+    @JsonCreator
+    public UsersTeamsRequest(@JsonProperty("uuids") Set<String> uuids) {
+        this.uuids = uuids;
+    }
+
+    public Set<String> getUuids() {
+        return Collections.unmodifiableSet(uuids);
+    }
+}
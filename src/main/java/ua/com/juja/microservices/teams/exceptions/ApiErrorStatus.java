@@ -24,6 +24,12 @@ public enum ApiErrorStatus {
             "Exception - NotKeeperException"
     ),
 
+    KEEPERS_SERVICE_UNAVAILABLE_EXCEPTION(
+            "TMF-F1-D2",
+            "Keepers service is unavailable now, please try again later",
+            "Exception - KeeperServiceUnavailableException"
+    ),
+
     USERS_ALREADY_IN_TEAM_EXCEPTION(
             "TMF-F1-D3",
             "Sorry, but the user already exists in team!",
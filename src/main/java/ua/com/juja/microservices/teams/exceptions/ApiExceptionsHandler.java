@@ -64,6 +64,17 @@ public class ApiExceptionsHandler extends ResponseEntityExceptionHandler {
         return new ResponseEntity<>(message, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(KeeperServiceUnavailableException.class)
+    public ResponseEntity<ApiErrorMessage> handleKeeperServiceUnavailableException(
+            KeeperServiceUnavailableException ex) {
+        ApiErrorMessage message =
+                ApiErrorMessage.builder(ApiErrorStatus.KEEPERS_SERVICE_UNAVAILABLE_EXCEPTION)
+                        .httpStatus(HttpStatus.SERVICE_UNAVAILABLE.value())
+                        .exceptionMessage(ex.getMessage())
+                        .build();
+        return new ResponseEntity<>(message, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
     @ExceptionHandler(ResourceAccessException.class)
     public ResponseEntity handleResourceAccessException(ResourceAccessException ex) {
         ApiErrorMessage message =
@@ -0,0 +1,10 @@
+package ua.com.juja.microservices.teams.exceptions;
+
+/**
+ * @author Ivan Shapovalov
+ */
+public class KeeperServiceUnavailableException extends RuntimeException {
+    public KeeperServiceUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,136 @@
+package ua.com.juja.microservices.teams.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.dao.TeamSavedEvent;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of all active teams of the current day together with their JSON. Teams are activated at the start of a day
+ * and deactivated at the end of a day, so active teams change only when a team is saved or a day passes. Entry is
+ * dropped on every saved team and is not used after midnight in the configured zone or after teams version changes.
+ * Teams version follows version kept in the storage, so teams saved by other instances drop the entry in version
+ * check interval as well.
+ * <p>
+ * Entry is loaded after teams version is read, from the same teams the version is taken from: active teams index,
+ * which is rebuilt before a changed storage version is used, or the storage. So an entry has all teams of its
+ * version.
+ * <p>
+ * Teams and JSON of the entry are shared and must not be modified.
+ *
+ * @author Ivan Shapovalov
+ */
+@Component
+@Slf4j
+public class ActiveTeamsCache implements PublicMetrics {
+
+    @Inject
+    private TeamService teamService;
+
+    @Inject
+    private TeamsVersion teamsVersion;
+
+    @Inject
+    private ObjectMapper objectMapper;
+
+    @Value("${teams.activeTeamsCache.enabled}")
+    private boolean cacheEnabled;
+
+    @Value("${teams.activeTeamsCache.zone}")
+    private String zoneId;
+
+    @Value("${teams.getAllTeams.streaming.enabled}")
+    private boolean streamingEnabled;
+
+    private ZoneId zone;
+    private volatile Entry entry;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        zone = zoneId.isEmpty() ? ZoneId.systemDefault() : ZoneId.of(zoneId);
+        log.info("Active teams cache is {} in zone '{}'", cacheEnabled ? "enabled" : "disabled", zone);
+        if (cacheEnabled && streamingEnabled) {
+            log.warn("Active teams cache is not used by 'Get all teams', streaming of teams takes precedence");
+        }
+    }
+
+    public boolean isEnabled() {
+        return cacheEnabled;
+    }
+
+    /**
+     * Returns active teams of the current day, loads and serializes them if cached ones are not actual.
+     */
+    public Entry getAllActiveTeams() {
+        LocalDate day = LocalDate.now(zone);
+        String version = teamsVersion.getETag();
+        Entry current = entry;
+        if (current != null && current.day.equals(day) && current.version.equals(version)) {
+            hits.incrementAndGet();
+            return current;
+        }
+        misses.incrementAndGet();
+        List<Team> teams = teamService.getAllActiveTeams();
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(teams);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(String.format("Active teams are not serialized: %s", ex.getMessage()), ex);
+        }
+        current = new Entry(day, version, teams, json);
+        entry = current;
+        log.debug("Active teams cache is loaded for day '{}'. Teams '{}', bytes '{}'", day, teams.size(), json.length);
+        return current;
+    }
+
+    @EventListener
+    public void onTeamSaved(TeamSavedEvent event) {
+        if (entry != null) {
+            entry = null;
+            invalidations.incrementAndGet();
+            log.debug("Active teams cache is invalidated by team '{}'", event.getTeam().getId());
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Entry current = entry;
+        return Arrays.asList(
+                new Metric<>("teams.activeTeamsCache.hits", hits.get()),
+                new Metric<>("teams.activeTeamsCache.misses", misses.get()),
+                new Metric<>("teams.activeTeamsCache.invalidations", invalidations.get()),
+                new Metric<>("teams.activeTeamsCache.bytes", current == null ? 0 : current.json.length));
+    }
+
+    /**
+     * Active teams of a day with their JSON, valid while teams version doesn't change.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Entry {
+        private final LocalDate day;
+        private final String version;
+        private final List<Team> teams;
+        private final byte[] json;
+    }
+}
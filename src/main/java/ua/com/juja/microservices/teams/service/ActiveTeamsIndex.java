@@ -0,0 +1,307 @@
+package ua.com.juja.microservices.teams.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.dao.TeamSavedEvent;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory index of active teams. It is built from DB on startup, updated on every saved team and
+ * re-evaluated when activate or deactivate date of some team passes. Teams saved by other instances
+ * of the service get into the index when teams version finds version of teams in the storage changed, or on the
+ * next consistency check with DB.
+ * <p>
+ * Version of the index is version of teams in the storage which the index was built at and count of changes of
+ * the index since then, so responses built from the index are tagged with the state they were built from.
+ * <p>
+ * Teams returned by index are shared and must not be modified.
+ *
+ * @author Ivan Shapovalov
+ */
+@Component
+@Slf4j
+public class ActiveTeamsIndex implements PublicMetrics {
+    private static final int REBUILD_ATTEMPTS = 3;
+
+    @Inject
+    private TeamRepository teamRepository;
+
+    @Value("${teams.activeIndex.enabled}")
+    private boolean indexEnabled;
+
+    private final Object lock = new Object();
+    private final AtomicLong inconsistencies = new AtomicLong();
+    /** Teams which are active now or will be active later, by id. Guarded by lock */
+    private Map<String, Team> actualTeams = new HashMap<>();
+    /** Count of applied saved teams and rebuilds. Guarded by lock */
+    private long updates;
+    /** Version of teams in the storage which the index was built at. Guarded by lock */
+    private String storageVersion;
+    /** Count of changes of the index since it was built at storage version. Guarded by lock */
+    private long changes;
+    private volatile Snapshot snapshot;
+
+    @PostConstruct
+    public void init() {
+        if (!indexEnabled) {
+            log.info("Active teams index is disabled");
+            return;
+        }
+        rebuild();
+    }
+
+    public boolean isReady() {
+        return snapshot != null;
+    }
+
+    public String getVersion() {
+        synchronized (lock) {
+            return storageVersion + "-" + changes;
+        }
+    }
+
+    /**
+     * Rebuilds the index if it was built at another version of teams in the storage, so the index has all teams
+     * written before the given version when its version is changed.
+     *
+     * @return true if the index is built at the given version
+     */
+    public boolean sync(String version) {
+        synchronized (lock) {
+            if (version.equals(storageVersion)) {
+                return true;
+            }
+        }
+        log.debug("Version of teams in the storage is changed to '{}', rebuild active teams index", version);
+        return rebuild(version);
+    }
+
+    public List<Team> getUserActiveTeams(String uuid, Date actualDate) {
+        return actualSnapshot(actualDate).memberTeams.getOrDefault(uuid, Collections.emptyList());
+    }
+
+    public List<Team> getAllActiveTeams(Date actualDate) {
+        return actualSnapshot(actualDate).activeTeams;
+    }
+
+    /**
+     * Returns active teams with id greater than given one in order of ids, as teams repository does.
+     */
+    public List<Team> getActiveTeamsPage(Date actualDate, String afterId, int size) {
+        List<Team> teams = actualSnapshot(actualDate).activeTeams;
+        int from = 0;
+        if (afterId != null) {
+            int to = teams.size();
+            while (from < to) {
+                int middle = (from + to) >>> 1;
+                if (teams.get(middle).getId().compareTo(afterId) <= 0) {
+                    from = middle + 1;
+                } else {
+                    to = middle;
+                }
+            }
+        }
+        return teams.subList(from, Math.min(from + size, teams.size()));
+    }
+
+    /**
+     * Loads all not deactivated teams from DB and replaces the index. If some team was saved or the index was
+     * rebuilt during the load, the loaded teams are dropped and loaded again.
+     */
+    public void rebuild() {
+        rebuild(teamRepository.getVersion());
+    }
+
+    @EventListener
+    public void onTeamSaved(TeamSavedEvent event) {
+        Team team = copy(event.getTeam());
+        Date actualDate = new Date();
+        synchronized (lock) {
+            updates++;
+            if (snapshot == null) {
+                return;
+            }
+            if (team.getDeactivateDate().after(actualDate)) {
+                actualTeams.put(team.getId(), team);
+            } else {
+                actualTeams.remove(team.getId());
+            }
+            snapshot = new Snapshot(actualTeams.values(), actualDate);
+            changes++;
+        }
+        log.debug("Active teams index is updated with team '{}'", team.getId());
+    }
+
+    /**
+     * Compares active teams of index with active teams in DB and rebuilds index if they differ.
+     *
+     * @return ids of teams which differ in index and DB
+     */
+    @Scheduled(initialDelayString = "${teams.activeIndex.checkMs}", fixedDelayString = "${teams.activeIndex.checkMs}")
+    public Set<String> checkConsistency() {
+        if (!indexEnabled && !isReady()) {
+            return Collections.emptySet();
+        }
+        Date actualDate = new Date();
+        long updatesBefore;
+        synchronized (lock) {
+            updatesBefore = updates;
+        }
+        Map<String, Team> dbTeams = teamRepository.getAllActiveTeams(actualDate).stream()
+                .collect(Collectors.toMap(Team::getId, team -> team, (a, b) -> b));
+        Map<String, Team> indexTeams = isReady() ? getAllActiveTeams(actualDate).stream()
+                .collect(Collectors.toMap(Team::getId, team -> team)) : Collections.emptyMap();
+        synchronized (lock) {
+            if (updatesBefore != updates) {
+                log.debug("Teams were saved during consistency check of active teams index, skip check");
+                return Collections.emptySet();
+            }
+        }
+        Set<String> ids = new HashSet<>(dbTeams.keySet());
+        ids.addAll(indexTeams.keySet());
+        Set<String> differences = ids.stream()
+                .filter(id -> !sameTeam(dbTeams.get(id), indexTeams.get(id)))
+                .collect(Collectors.toSet());
+        if (!differences.isEmpty()) {
+            inconsistencies.incrementAndGet();
+            log.warn("Active teams index differs from DB in teams '{}', rebuild index", differences);
+            rebuild();
+        }
+        return differences;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Snapshot current = snapshot;
+        return Arrays.asList(
+                new Metric<>("teams.activeIndex.ready", current == null ? 0 : 1),
+                new Metric<>("teams.activeIndex.activeTeams", current == null ? 0 : current.activeTeams.size()),
+                new Metric<>("teams.activeIndex.members", current == null ? 0 : current.memberTeams.size()),
+                new Metric<>("teams.activeIndex.inconsistencies", inconsistencies.get()));
+    }
+
+    private Snapshot actualSnapshot(Date actualDate) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            throw new IllegalStateException("Active teams index is not built");
+        }
+        if (actualDate.before(current.nextBoundary)) {
+            return current;
+        }
+        synchronized (lock) {
+            if (actualDate.before(snapshot.nextBoundary)) {
+                return snapshot;
+            }
+            actualTeams.values().removeIf(team -> !team.getDeactivateDate().after(actualDate));
+            snapshot = new Snapshot(actualTeams.values(), actualDate);
+            changes++;
+            log.debug("Active teams index is re-evaluated at date '{}'", actualDate);
+            return snapshot;
+        }
+    }
+
+    /**
+     * Loads teams after version of teams in the storage is read, so the index has all teams written before the
+     * version. Rebuild at the same version counts as a change of the index, as the rebuilt index may differ.
+     *
+     * @return true if the index is rebuilt
+     */
+    private boolean rebuild(String version) {
+        for (int attempt = 0; attempt < REBUILD_ATTEMPTS; attempt++) {
+            Date actualDate = new Date();
+            long updatesBefore;
+            synchronized (lock) {
+                updatesBefore = updates;
+            }
+            List<Team> teams = teamRepository.getNotDeactivatedTeams(actualDate);
+            synchronized (lock) {
+                if (updatesBefore == updates) {
+                    actualTeams = teams.stream().collect(Collectors.toMap(Team::getId, team -> team, (a, b) -> b));
+                    snapshot = new Snapshot(actualTeams.values(), actualDate);
+                    updates++;
+                    if (version.equals(storageVersion)) {
+                        changes++;
+                    } else {
+                        storageVersion = version;
+                        changes = 0;
+                    }
+                    log.info("Active teams index is built at version '{}'. Active teams '{}', members '{}'",
+                            version, snapshot.activeTeams.size(), snapshot.memberTeams.size());
+                    return true;
+                }
+            }
+            log.debug("Teams were saved during rebuild of active teams index, load teams again");
+        }
+        log.warn("Active teams index is not rebuilt, teams were saved during '{}' attempts", REBUILD_ATTEMPTS);
+        return false;
+    }
+
+    private static boolean sameTeam(Team dbTeam, Team indexTeam) {
+        return dbTeam != null && indexTeam != null &&
+                Objects.equals(dbTeam.getMembers(), indexTeam.getMembers()) &&
+                Objects.equals(dbTeam.getActivateDate(), indexTeam.getActivateDate()) &&
+                Objects.equals(dbTeam.getDeactivateDate(), indexTeam.getDeactivateDate());
+    }
+
+    private static Team copy(Team team) {
+        Team copy = new Team(team.getFrom(), new HashSet<>(team.getMembers()));
+        copy.setId(team.getId());
+        copy.setActivateDate(team.getActivateDate());
+        copy.setDeactivateDate(team.getDeactivateDate());
+        return copy;
+    }
+
+    /**
+     * Active teams at the moment of creation. The snapshot is valid until the nearest activate or deactivate
+     * date of not deactivated teams.
+     */
+    private static class Snapshot {
+        private final List<Team> activeTeams;
+        private final Map<String, List<Team>> memberTeams;
+        private final Date nextBoundary;
+
+        Snapshot(Collection<Team> teams, Date actualDate) {
+            List<Team> active = new ArrayList<>();
+            Map<String, List<Team>> members = new HashMap<>();
+            long boundary = Long.MAX_VALUE;
+            for (Team team : teams) {
+                if (team.getActivateDate().after(actualDate)) {
+                    boundary = Math.min(boundary, team.getActivateDate().getTime());
+                    continue;
+                }
+                boundary = Math.min(boundary, team.getDeactivateDate().getTime());
+                active.add(team);
+                team.getMembers().forEach(member ->
+                        members.computeIfAbsent(member, uuid -> new ArrayList<>()).add(team));
+            }
+            active.sort(Comparator.comparing(Team::getId));
+            members.replaceAll((member, memberTeams) -> Collections.unmodifiableList(memberTeams));
+            this.activeTeams = Collections.unmodifiableList(active);
+            this.memberTeams = Collections.unmodifiableMap(members);
+            this.nextBoundary = new Date(boundary);
+        }
+    }
+}
@@ -1,20 +1,189 @@
 package ua.com.juja.microservices.teams.service;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import ua.com.juja.microservices.teams.dao.KeeperRepository;
+import ua.com.juja.microservices.teams.entity.Keeper;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Keeps keeper's directions in a bounded cache. Entries are reloaded in background when they are
+ * older than refresh interval and are evicted when they are older than ttl. Concurrent misses for
+ * the same keeper are coalesced into one request to keepers service.
+ * <p>
+ * All keepers of teams direction are loaded at startup and reloaded on schedule, so their directions
+ * are taken from memory. Other users are looked up in keepers service one by one.
+ *
  * @author Ivan Shapovalov
  */
 @Service
-public class KeeperService {
+@Slf4j
+public class KeeperService implements PublicMetrics {
     @Inject
     private KeeperRepository keeperRepository;
 
+    @Value("${keepers.cache.enabled}")
+    private boolean cacheEnabled;
+    @Value("${keepers.cache.maxSize}")
+    private long cacheMaxSize;
+    @Value("${keepers.cache.ttlSeconds}")
+    private long cacheTtlSeconds;
+    @Value("${keepers.cache.refreshSeconds}")
+    private long cacheRefreshSeconds;
+    @Value("${keepers.preload.enabled}")
+    private boolean preloadEnabled;
+    @Value("${keepers.direction.teams}")
+    private String teamsDirection;
+
+    private LoadingCache<String, List<String>> directionsCache;
+    private final ConcurrentMap<String, CompletableFuture<List<String>>> inFlightRequests = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedRequests = new AtomicLong();
+    private final AtomicLong failedPreloads = new AtomicLong();
+    private volatile Map<String, List<String>> preloadedDirections = Collections.emptyMap();
+
+    @PostConstruct
+    public void init() {
+        if (preloadEnabled) {
+            preloadDirections();
+        }
+        if (!cacheEnabled) {
+            log.info("Keepers directions cache is disabled");
+            return;
+        }
+        if (cacheRefreshSeconds >= cacheTtlSeconds) {
+            throw new IllegalStateException(String.format("Keepers cache refresh interval '%s' must be less than ttl '%s'",
+                    cacheRefreshSeconds, cacheTtlSeconds));
+        }
+        directionsCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(cacheTtlSeconds, TimeUnit.SECONDS)
+                .refreshAfterWrite(cacheRefreshSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build(this::loadDirections);
+        log.info("Keepers directions cache started. Max size '{}', ttl '{}' sec, refresh '{}' sec",
+                cacheMaxSize, cacheTtlSeconds, cacheRefreshSeconds);
+    }
+
     public List<String> getDirections(String uuid) {
-        return keeperRepository.getDirections(uuid);
+        List<String> preloaded = preloadedDirections.get(uuid);
+        if (preloaded != null) {
+            return preloaded;
+        }
+        if (directionsCache != null) {
+            List<String> directions = directionsCache.getIfPresent(uuid);
+            if (directions != null) {
+                return directions;
+            }
+        }
+        return requestDirections(uuid);
+    }
+
+    /**
+     * Replaces preloaded directions with all keepers of teams direction. If keepers service fails
+     * the previous ones are kept until the next reload.
+     */
+    @Scheduled(initialDelayString = "${keepers.preload.refreshMs}", fixedDelayString = "${keepers.preload.refreshMs}")
+    public void preloadDirections() {
+        if (!preloadEnabled) {
+            return;
+        }
+        log.debug("Preload directions of '{}' keepers", teamsDirection);
+        try {
+            Map<String, List<String>> directions = new HashMap<>();
+            List<Keeper> keepers = keeperRepository.getDirectionKeepers(teamsDirection);
+            if (keepers != null) {
+                keepers.forEach(keeper ->
+                        directions.put(keeper.getUuid(), Collections.unmodifiableList(keeper.getDirections())));
+            }
+            preloadedDirections = Collections.unmodifiableMap(directions);
+            log.info("Preloaded directions of '{}' keepers", directions.size());
+        } catch (RuntimeException ex) {
+            failedPreloads.incrementAndGet();
+            log.warn("Failed to preload keepers directions, keep previous '{}' keepers: [{}]",
+                    preloadedDirections.size(), ex.getMessage());
+        }
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        Collection<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>("keepers.preload.size", preloadedDirections.size()));
+        metrics.add(new Metric<>("keepers.preload.failed", failedPreloads.get()));
+        metrics.add(new Metric<>("keepers.requests.inFlight", inFlightRequests.size()));
+        metrics.add(new Metric<>("keepers.requests.coalesced", coalescedRequests.get()));
+        if (directionsCache == null) {
+            return metrics;
+        }
+        CacheStats stats = directionsCache.stats();
+        metrics.add(new Metric<>("keepers.cache.size", directionsCache.estimatedSize()));
+        metrics.add(new Metric<>("keepers.cache.hits", stats.hitCount()));
+        metrics.add(new Metric<>("keepers.cache.misses", stats.missCount()));
+        metrics.add(new Metric<>("keepers.cache.evictions", stats.evictionCount()));
+        metrics.add(new Metric<>("keepers.cache.loads.failed", stats.loadFailureCount()));
+        return metrics;
+    }
+
+    /**
+     * Concurrent requests for the same keeper share a single request to keepers service and its result.
+     */
+    private List<String> requestDirections(String uuid) {
+        CompletableFuture<List<String>> request = new CompletableFuture<>();
+        CompletableFuture<List<String>> inFlightRequest = inFlightRequests.putIfAbsent(uuid, request);
+        if (inFlightRequest != null) {
+            coalescedRequests.incrementAndGet();
+            log.debug("Join in-flight request of keeper's '{}' directions", uuid);
+            return join(inFlightRequest);
+        }
+        try {
+            List<String> directions = loadDirections(uuid);
+            if (directionsCache != null) {
+                directionsCache.put(uuid, directions);
+            }
+            request.complete(directions);
+            return directions;
+        } catch (RuntimeException ex) {
+            request.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlightRequests.remove(uuid, request);
+        }
+    }
+
+    private List<String> join(CompletableFuture<List<String>> request) {
+        try {
+            return request.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    private List<String> loadDirections(String uuid) {
+        log.debug("Load keeper's '{}' directions", uuid);
+        List<String> directions = keeperRepository.getDirections(uuid);
+        return directions == null ? Collections.emptyList() : Collections.unmodifiableList(directions);
     }
 }
@@ -0,0 +1,125 @@
+package ua.com.juja.microservices.teams.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.dao.MembershipRepository;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.entity.Membership;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Makes memberships match teams which are not deactivated. Memberships are written besides teams, so a failure
+ * between the two writes, or teams saved before memberships existed, leave them apart:
+ * <ul>
+ * <li>member of a team without membership of the team gets it</li>
+ * <li>membership of a team which is deactivated, or doesn't have the member, is deactivated</li>
+ * </ul>
+ * Memberships are read before teams, so a team deactivated between the reads isn't given memberships again.
+ * Membership is repaired only if it is still as read, so a membership reserved by a team activated since the read
+ * is not overwritten.
+ * Memberships of teams created during grace period are left, as such teams may be being saved now.
+ *
+ * @author Ivan Shapovalov
+ */
+@Component
+@Slf4j
+public class MembershipRepairer implements PublicMetrics {
+
+    @Inject
+    private TeamRepository teamRepository;
+
+    @Inject
+    private MembershipRepository membershipRepository;
+
+    @Value("${teams.membership.repair.enabled}")
+    private boolean repairEnabled;
+
+    @Value("${teams.membership.repair.graceMs}")
+    private long graceMs;
+
+    private final AtomicLong repairedMemberships = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    @Scheduled(initialDelayString = "${teams.membership.repair.checkMs}",
+            fixedDelayString = "${teams.membership.repair.checkMs}")
+    public void scheduledRepair() {
+        if (!repairEnabled) {
+            return;
+        }
+        try {
+            repair();
+        } catch (RuntimeException ex) {
+            failures.incrementAndGet();
+            log.warn("Repair of memberships is interrupted: [{}]", ex.getMessage());
+        }
+    }
+
+    /**
+     * @return count of repaired memberships, without memberships changed since they were read
+     */
+    public int repair() {
+        Date actualDate = new Date();
+        log.debug("Started 'Repair memberships' at date '{}'", actualDate);
+        Map<String, Membership> memberships = membershipRepository.getNotDeactivatedMemberships(actualDate).stream()
+                .collect(Collectors.toMap(Membership::getUuid, Function.identity()));
+        Map<String, List<Team>> memberTeams = new HashMap<>();
+        teamRepository.getNotDeactivatedTeams(actualDate).forEach(team -> team.getMembers()
+                .forEach(uuid -> memberTeams.computeIfAbsent(uuid, key -> new ArrayList<>()).add(team)));
+        List<Membership> repaired = new ArrayList<>();
+        memberTeams.forEach((uuid, teams) -> {
+            if (teams.size() > 1) {
+                log.warn("User '{}' is in several teams, membership is not repaired", uuid);
+                return;
+            }
+            Membership expected = new Membership(uuid, teams.get(0));
+            if (!matches(memberships.get(uuid), expected)) {
+                repaired.add(expected);
+            }
+        });
+        long graceStart = actualDate.getTime() - graceMs;
+        memberships.values().stream()
+                .filter(membership -> !memberTeams.containsKey(membership.getUuid()))
+                .filter(membership -> !ObjectId.isValid(membership.getTeamId()) ||
+                        new ObjectId(membership.getTeamId()).getDate().getTime() < graceStart)
+                .forEach(membership -> repaired.add(new Membership(membership.getUuid(), membership.getTeamId(),
+                        membership.getActivateDate(), actualDate)));
+        int count = membershipRepository.repairMemberships(memberships, repaired, actualDate);
+        repairedMemberships.addAndGet(count);
+        if (repaired.isEmpty()) {
+            log.debug("Finished 'Repair memberships'. Memberships match teams");
+        } else {
+            log.warn("Finished 'Repair memberships'. Repaired memberships '{}' of '{}'", count, repaired);
+        }
+        return count;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("teams.membership.repair.repairedMemberships", repairedMemberships.get()),
+                new Metric<>("teams.membership.repair.failures", failures.get()));
+    }
+
+    private static boolean matches(Membership membership, Membership expected) {
+        return membership != null && membership.getTeamId().equals(expected.getTeamId()) &&
+                membership.getActivateDate().equals(expected.getActivateDate()) &&
+                membership.getDeactivateDate().equals(expected.getDeactivateDate());
+    }
+}
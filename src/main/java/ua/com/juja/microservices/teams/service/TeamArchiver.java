@@ -0,0 +1,78 @@
+package ua.com.juja.microservices.teams.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Moves teams deactivated more than archive age ago out of teams collection in batches. Every batch is
+ * complete on its own, so an archiving stopped by failure or shutdown continues from the next batch on the
+ * next run.
+ *
+ * @author Ivan Shapovalov
+ */
+@Component
+@Slf4j
+public class TeamArchiver implements PublicMetrics {
+
+    @Inject
+    private TeamRepository teamRepository;
+
+    @Value("${teams.archive.enabled}")
+    private boolean archiveEnabled;
+
+    @Value("${teams.archive.batchSize}")
+    private int batchSize;
+
+    private final AtomicLong archivedTeams = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    @Scheduled(initialDelayString = "${teams.archive.checkMs}", fixedDelayString = "${teams.archive.checkMs}")
+    public void scheduledArchive() {
+        if (!archiveEnabled) {
+            return;
+        }
+        try {
+            archive();
+        } catch (RuntimeException ex) {
+            failures.incrementAndGet();
+            log.warn("Archiving of teams is interrupted: [{}]", ex.getMessage());
+        }
+    }
+
+    /**
+     * Archives teams batch by batch until no team deactivated before archive date is left.
+     *
+     * @return count of archived teams
+     */
+    public long archive() {
+        Date deactivatedBefore = teamRepository.archiveDate();
+        log.debug("Started 'Archive teams' deactivated before '{}'", deactivatedBefore);
+        long archived = 0;
+        int batch;
+        do {
+            batch = teamRepository.archiveTeams(deactivatedBefore, batchSize);
+            archived += batch;
+            archivedTeams.addAndGet(batch);
+        } while (batch > 0);
+        log.info("Finished 'Archive teams' deactivated before '{}'. Teams size '{}'", deactivatedBefore, archived);
+        return archived;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        return Arrays.asList(
+                new Metric<>("teams.archive.archivedTeams", archivedTeams.get()),
+                new Metric<>("teams.archive.failures", failures.get()));
+    }
+}
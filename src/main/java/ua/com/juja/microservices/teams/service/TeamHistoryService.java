@@ -0,0 +1,177 @@
+package ua.com.juja.microservices.teams.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.entity.Team;
+import ua.com.juja.microservices.teams.entity.TeamsPage;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Answers which teams were active at some moment or during some period in the past. Activated teams are active
+ * from the start of the day of activation and deactivated teams are deactivated at the time of request, so a
+ * write may change teams of any moment of the current day, but not of earlier days. Results of periods which
+ * ended before the current day are cached. The day is taken at closed after interval ago, so writes started
+ * before midnight are finished before periods of the previous day are cached.
+ * <p>
+ * Timeline of user returns all teams of user page by page, pages are continued after activate date and id of
+ * the last team of previous page.
+ *
+ * @author Ivan Shapovalov
+ */
+@Service
+@Slf4j
+public class TeamHistoryService implements PublicMetrics {
+    private static final String TIMELINE_TOKEN_PREFIX = "timeline:";
+
+    @Inject
+    private TeamRepository teamRepository;
+
+    @Value("${teams.history.cache.maxSize}")
+    private long cacheMaxSize;
+    @Value("${teams.history.cache.closedAfterMs}")
+    private long closedAfterMs;
+    @Value("${teams.timeline.page.defaultSize}")
+    private int defaultPageSize;
+    @Value("${teams.timeline.page.maxSize}")
+    private int maxPageSize;
+
+    private Cache<String, List<Team>> historyCache;
+
+    @PostConstruct
+    public void init() {
+        historyCache = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .recordStats()
+                .build();
+        log.info("Teams history cache started. Max size '{}', periods closed after '{}' ms", cacheMaxSize,
+                closedAfterMs);
+    }
+
+    /**
+     * Returns teams active at given moment, or at any moment of period from inclusive to exclusive.
+     *
+     * @param uuid member of teams or null for teams of all users
+     */
+    public List<Team> getTeamsHistory(String uuid, Date at, Date from, Date to) {
+        Date start;
+        Date end;
+        if (at != null && from == null && to == null) {
+            start = at;
+            end = new Date(at.getTime() + 1);
+        } else if (at == null && from != null && to != null && from.before(to)) {
+            start = from;
+            end = to;
+        } else {
+            log.warn("Teams history request is incorrect. At '{}', from '{}', to '{}'", at, from, to);
+            throw new IllegalArgumentException("Teams history Request must contain either 'at' or 'from' before 'to'");
+        }
+        log.debug("Started 'getTeamsHistory' of user '{}' from '{}' to '{}'", uuid, start, end);
+        List<Team> teams;
+        if (end.getTime() <= closedBefore()) {
+            teams = historyCache.get(String.format("%s|%d|%d", uuid, start.getTime(), end.getTime()),
+                    key -> loadTeams(uuid, start, end));
+        } else {
+            teams = loadTeams(uuid, start, end);
+        }
+        log.info("Finished 'getTeamsHistory' of user '{}'. Teams size '{}'", uuid, teams.size());
+        return teams;
+    }
+
+    /**
+     * Returns page of all teams of user ordered by activate date. Page size is limited by max page size.
+     *
+     * @param token token of the page returned with previous page or null for the first page
+     * @param size  page size or null for default size
+     */
+    public TeamsPage getUserTeamsTimeline(String uuid, String token, Integer size) {
+        int pageSize = size == null ? defaultPageSize : Math.min(size, maxPageSize);
+        if (pageSize < 1) {
+            log.warn("Page size is incorrect '{}'", size);
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        Date afterActivateDate = null;
+        String afterId = null;
+        if (token != null) {
+            String[] lastTeam = decodeTimelineToken(token);
+            afterActivateDate = new Date(Long.parseLong(lastTeam[0]));
+            afterId = lastTeam[1];
+        }
+        log.debug("Started 'getUserTeamsTimeline' of user '{}' after '{}' '{}' with size '{}'", uuid,
+                afterActivateDate, afterId, pageSize);
+        List<Team> teams = teamRepository.getUserTeamsTimeline(uuid, afterActivateDate, afterId, pageSize + 1);
+        String nextToken = null;
+        if (teams.size() > pageSize) {
+            teams = teams.subList(0, pageSize);
+            nextToken = encodeTimelineToken(teams.get(pageSize - 1));
+        }
+        log.info("Finished 'getUserTeamsTimeline' of user '{}'. Teams size '{}'", uuid, teams.size());
+        return new TeamsPage(teams, nextToken);
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = historyCache.stats();
+        return Arrays.asList(
+                new Metric<>("teams.history.cache.size", historyCache.estimatedSize()),
+                new Metric<>("teams.history.cache.hits", stats.hitCount()),
+                new Metric<>("teams.history.cache.misses", stats.missCount()),
+                new Metric<>("teams.history.cache.evictions", stats.evictionCount()));
+    }
+
+    /**
+     * @return time before which teams can't be changed by writes
+     */
+    private long closedBefore() {
+        ZoneId zone = ZoneId.systemDefault();
+        return Instant.ofEpochMilli(System.currentTimeMillis() - closedAfterMs).atZone(zone).toLocalDate()
+                .atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private List<Team> loadTeams(String uuid, Date start, Date end) {
+        List<Team> teams = new ArrayList<>(teamRepository.getTeamsActiveBetween(uuid, start, end));
+        teams.sort(Comparator.comparing(Team::getActivateDate));
+        return Collections.unmodifiableList(teams);
+    }
+
+    private static String encodeTimelineToken(Team lastTeam) {
+        String value = TIMELINE_TOKEN_PREFIX + lastTeam.getActivateDate().getTime() + ":" + lastTeam.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeTimelineToken(String token) {
+        String value;
+        try {
+            value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            value = "";
+        }
+        String[] lastTeam = value.startsWith(TIMELINE_TOKEN_PREFIX) ?
+                value.substring(TIMELINE_TOKEN_PREFIX.length()).split(":") : new String[0];
+        if (lastTeam.length != 2 || !lastTeam[0].matches("-?\\d{1,18}") || !ObjectId.isValid(lastTeam[1])) {
+            log.warn("Page token is incorrect '{}'", token);
+            throw new IllegalArgumentException(String.format("Page token '%s' is incorrect", token));
+        }
+        return lastTeam;
+    }
+}
@@ -1,23 +1,48 @@
 package ua.com.juja.microservices.teams.service;
 
 import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import ua.com.juja.microservices.teams.dao.impl.TeamRepository;
+import ua.com.juja.microservices.teams.dao.MembershipRepository;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.entity.ActivateTeamsRequest;
+import ua.com.juja.microservices.teams.entity.DeactivateTeamsRequest;
+import ua.com.juja.microservices.teams.entity.Membership;
 import ua.com.juja.microservices.teams.entity.Team;
 import ua.com.juja.microservices.teams.entity.TeamRequest;
+import ua.com.juja.microservices.teams.entity.TeamResult;
+import ua.com.juja.microservices.teams.entity.TeamsPage;
+import ua.com.juja.microservices.teams.entity.UserTeam;
+import ua.com.juja.microservices.teams.entity.UsersTeamsRequest;
 import ua.com.juja.microservices.teams.entity.impl.ActivateTeamRequest;
 import ua.com.juja.microservices.teams.entity.impl.DeactivateTeamRequest;
+import ua.com.juja.microservices.teams.exceptions.KeeperExchangeException;
 import ua.com.juja.microservices.teams.exceptions.UserAlreadyInTeamException;
 import ua.com.juja.microservices.teams.exceptions.UserInSeveralTeamsException;
 import ua.com.juja.microservices.teams.exceptions.UserNotInTeamException;
 import ua.com.juja.microservices.teams.exceptions.UserNotTeamsKeeperException;
 
 import javax.inject.Inject;
+import javax.inject.Named;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -29,6 +54,7 @@ import java.util.stream.Collectors;
 public class TeamService {
 
     private static final int TEAM_SIZE = 4;
+    private static final String PAGE_TOKEN_PREFIX = "v1:";
 
     @Inject
     private KeeperService keeperService;
@@ -36,27 +62,67 @@ public class TeamService {
     @Inject
     private TeamRepository teamRepository;
 
+    @Inject
+    private MembershipRepository membershipRepository;
+
+    @Inject
+    private ActiveTeamsIndex activeTeamsIndex;
+
+    @Inject
+    @Named("activateTeamExecutor")
+    private Executor activateTeamExecutor;
+
     @Value("${keepers.direction.teams}")
     private String teamsDirection;
 
+    @Value("${teams.activate.async.enabled}")
+    private boolean asyncActivation;
+
+    @Value("${teams.membership.lookup.enabled}")
+    private boolean membershipLookup;
+
+    @Value("${teams.usersTeams.maxSize}")
+    private int maxUsersTeamsSize;
+
+    @Value("${teams.bulk.maxSize}")
+    private int maxBulkSize;
+
+    @Value("${teams.getAllTeams.page.defaultSize}")
+    private int defaultPageSize;
+
+    @Value("${teams.getAllTeams.page.maxSize}")
+    private int maxPageSize;
+
     public Team activateTeam(ActivateTeamRequest activateTeamRequest) {
         if (activateTeamRequest == null || activateTeamRequest.getMembers().size() != TEAM_SIZE) {
             log.warn("Activate team Request is incorrect '{}'", activateTeamRequest);
             throw new IllegalArgumentException(String.format("Activate team Request must contain '%s' members",
                     TEAM_SIZE));
         }
-        checkPermissions(activateTeamRequest);
         log.debug("Started 'activateTeam' ActivateTeamRequest: {}", activateTeamRequest);
         Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
-        List<String> usersInTeams = teamRepository.checkUsersActiveTeams(activateTeamRequest.getMembers(), actualDate);
+        List<String> usersInTeams = checkPermissionsAndUsersActiveTeams(activateTeamRequest, actualDate);
         if (usersInTeams.size() > 0) {
             log.warn("User(s) '{}' exist(s) in a another teams", usersInTeams);
             throw new UserAlreadyInTeamException(String.format("User(s) '#%s#' exist(s) in another teams",
                     usersInTeams.stream().collect(Collectors.joining(","))));
         }
         Team team = new Team(activateTeamRequest.getFrom(), activateTeamRequest.getMembers());
+        team.setId(new ObjectId().toHexString());
+        String reservedUser = membershipRepository.reserveMembers(team, actualDate);
+        if (reservedUser != null) {
+            log.warn("User '{}' is reserved by another team concurrently", reservedUser);
+            throw new UserAlreadyInTeamException(String.format("User(s) '#%s#' exist(s) in another teams",
+                    reservedUser));
+        }
         log.debug("Started 'Save team '{}'", team);
-        Team savedTeam = teamRepository.saveTeam(team);
+        Team savedTeam;
+        try {
+            savedTeam = teamRepository.saveTeam(team);
+        } catch (RuntimeException ex) {
+            membershipRepository.releaseMembers(team);
+            throw ex;
+        }
         log.debug("Finished 'Save team '{}'", team);
         log.info("Finished 'Save team' '{}'", team.getId());
         return savedTeam;
@@ -70,15 +136,191 @@ public class TeamService {
         checkPermissions(deactivateTeamRequest);
         String uuid = deactivateTeamRequest.getUuid();
         log.debug("Started 'deactivateTeam' with uuid '{}'", uuid);
-        Team team = getUserActiveTeam(uuid);
-        log.debug("Finished 'getUserActiveTeams' with uuid '{}'. Teams '{}'", uuid, team.toString());
         Date deactivateDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
-        team.setDeactivateDate(deactivateDate);
-        log.debug("Started 'Save team in repository'. Team '{}'", team.toString());
-        Team savedTeam = teamRepository.saveTeam(team);
-        log.debug("Finished 'Save team in repository'. Team '{}'", team.toString());
-        log.info("Team '{}' saved in repository ", team.getId());
-        return savedTeam;
+        Team team = getSingleTeam(uuid, deactivateDate, teamRepository.deactivateUserActiveTeam(uuid, deactivateDate));
+        membershipRepository.deactivateMembers(team);
+        log.debug("Finished 'deactivateTeam' with uuid '{}'. Team '{}'", uuid, team);
+        log.info("Team '{}' deactivated in repository ", team.getId());
+        return team;
+    }
+
+    /**
+     * Activates teams of bulk request. Requests are validated together: permissions are checked once per keeper
+     * and members of all requests are checked with one query. Member requested for several teams is given
+     * to the first of them. Teams are saved with one unordered bulk write.
+     *
+     * @return results in order of requests
+     */
+    public List<TeamResult> activateTeams(ActivateTeamsRequest activateTeamsRequest) {
+        checkBulkRequest(activateTeamsRequest == null ? null : activateTeamsRequest.getTeams(), "Activate teams");
+        List<ActivateTeamRequest> requests = activateTeamsRequest.getTeams();
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        log.debug("Started 'activateTeams' with '{}' requests on date '{}'", requests.size(), actualDate);
+        TeamResult[] results = new TeamResult[requests.size()];
+        Map<String, String> notKeepers = checkKeepersPermissions(requests);
+        Set<String> members = new HashSet<>();
+        for (int i = 0; i < requests.size(); i++) {
+            ActivateTeamRequest request = requests.get(i);
+            if (request.getMembers().size() != TEAM_SIZE) {
+                results[i] = TeamResult.failed(String.format("Activate team Request must contain '%s' members",
+                        TEAM_SIZE));
+            } else if (notKeepers.containsKey(request.getFrom())) {
+                results[i] = TeamResult.failed(notKeepers.get(request.getFrom()));
+            } else {
+                members.addAll(request.getMembers());
+            }
+        }
+        Set<String> usersInTeams = members.isEmpty() ? Collections.emptySet() :
+                new HashSet<>(checkUsersActiveTeams(members, actualDate));
+        Set<String> requestedMembers = new HashSet<>();
+        Map<String, Integer> teamIndexes = new HashMap<>();
+        List<Team> teams = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            if (results[i] != null) {
+                continue;
+            }
+            ActivateTeamRequest request = requests.get(i);
+            List<String> busyMembers = request.getMembers().stream()
+                    .filter(member -> usersInTeams.contains(member) || requestedMembers.contains(member))
+                    .sorted()
+                    .collect(Collectors.toList());
+            if (!busyMembers.isEmpty()) {
+                results[i] = TeamResult.failed(String.format("User(s) '#%s#' exist(s) in another teams",
+                        busyMembers.stream().collect(Collectors.joining(","))));
+                continue;
+            }
+            requestedMembers.addAll(request.getMembers());
+            Team team = new Team(request.getFrom(), request.getMembers());
+            team.setId(new ObjectId().toHexString());
+            teams.add(team);
+            teamIndexes.put(team.getId(), i);
+        }
+        Map<String, String> reservedUsers = membershipRepository.reserveMembers(teams, actualDate);
+        reservedUsers.forEach((teamId, uuid) -> results[teamIndexes.get(teamId)] = TeamResult.failed(
+                String.format("User(s) '#%s#' exist(s) in another teams", uuid)));
+        teams.removeIf(team -> reservedUsers.containsKey(team.getId()));
+        List<Team> savedTeams = teamRepository.insertTeams(teams);
+        savedTeams.forEach(team -> results[teamIndexes.get(team.getId())] = TeamResult.success(team));
+        teams.stream()
+                .filter(team -> results[teamIndexes.get(team.getId())] == null)
+                .forEach(team -> {
+                    membershipRepository.releaseMembers(team);
+                    results[teamIndexes.get(team.getId())] = TeamResult.failed("Team is not saved");
+                });
+        log.info("Finished 'activateTeams'. Requests '{}', activated teams '{}'", requests.size(), savedTeams.size());
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Deactivates teams of bulk request. Permissions are checked once per keeper, teams of all users are found
+     * with one query and deactivated with one unordered bulk write. Users of the same team get the same result.
+     *
+     * @return results in order of requests
+     */
+    public List<TeamResult> deactivateTeams(DeactivateTeamsRequest deactivateTeamsRequest) {
+        checkBulkRequest(deactivateTeamsRequest == null ? null : deactivateTeamsRequest.getTeams(), "Deactivate teams");
+        List<DeactivateTeamRequest> requests = deactivateTeamsRequest.getTeams();
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        log.debug("Started 'deactivateTeams' with '{}' requests on date '{}'", requests.size(), actualDate);
+        TeamResult[] results = new TeamResult[requests.size()];
+        Map<String, String> notKeepers = checkKeepersPermissions(requests);
+        Set<String> uuids = requests.stream()
+                .filter(request -> !notKeepers.containsKey(request.getFrom()))
+                .map(DeactivateTeamRequest::getUuid)
+                .collect(Collectors.toSet());
+        Map<String, List<Team>> usersTeams = new HashMap<>();
+        if (!uuids.isEmpty()) {
+            teamRepository.getUsersActiveTeams(uuids, actualDate).forEach(team -> team.getMembers().stream()
+                    .filter(uuids::contains)
+                    .forEach(uuid -> usersTeams.computeIfAbsent(uuid, key -> new ArrayList<>()).add(team)));
+        }
+        Map<String, Team> teams = new LinkedHashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            DeactivateTeamRequest request = requests.get(i);
+            List<Team> userTeams = usersTeams.getOrDefault(request.getUuid(), Collections.emptyList());
+            if (notKeepers.containsKey(request.getFrom())) {
+                results[i] = TeamResult.failed(notKeepers.get(request.getFrom()));
+            } else if (userTeams.isEmpty()) {
+                results[i] = TeamResult.failed(String.format("User with uuid '%s' not in team now", request.getUuid()));
+            } else if (userTeams.size() > 1) {
+                results[i] = TeamResult.failed(String.format("User with uuid '%s' is in several teams now",
+                        request.getUuid()));
+            } else {
+                teams.putIfAbsent(userTeams.get(0).getId(), userTeams.get(0));
+            }
+        }
+        Map<String, Team> deactivatedTeams = teamRepository.deactivateTeams(new ArrayList<>(teams.values()), actualDate)
+                .stream()
+                .collect(Collectors.toMap(Team::getId, team -> team));
+        membershipRepository.deactivateMembers(deactivatedTeams.keySet(), actualDate);
+        for (int i = 0; i < requests.size(); i++) {
+            if (results[i] == null) {
+                String uuid = requests.get(i).getUuid();
+                Team team = deactivatedTeams.get(usersTeams.get(uuid).get(0).getId());
+                results[i] = team != null ? TeamResult.success(team) :
+                        TeamResult.failed(String.format("User with uuid '%s' not in team now", uuid));
+            }
+        }
+        log.info("Finished 'deactivateTeams'. Requests '{}', deactivated teams '{}'", requests.size(),
+                deactivatedTeams.size());
+        return Arrays.asList(results);
+    }
+
+    private void checkBulkRequest(List<?> requests, String name) {
+        if (requests == null || requests.isEmpty() || requests.size() > maxBulkSize) {
+            log.warn("{} Request is incorrect '{}'", name, requests);
+            throw new IllegalArgumentException(String.format("%s Request must contain from 1 to '%s' requests",
+                    name, maxBulkSize));
+        }
+    }
+
+    /**
+     * Checks permissions of every keeper of requests once.
+     *
+     * @return error message by keeper, only for keepers without permissions
+     */
+    private Map<String, String> checkKeepersPermissions(List<? extends TeamRequest> requests) {
+        Map<String, TeamRequest> keepersRequests = new LinkedHashMap<>();
+        requests.forEach(request -> keepersRequests.putIfAbsent(request.getFrom(), request));
+        Map<String, String> notKeepers = new HashMap<>();
+        keepersRequests.forEach((from, request) -> {
+            try {
+                checkPermissions(request);
+            } catch (UserNotTeamsKeeperException | KeeperExchangeException ex) {
+                notKeepers.put(from, ex.getMessage());
+            }
+        });
+        return notKeepers;
+    }
+
+    private List<String> checkPermissionsAndUsersActiveTeams(ActivateTeamRequest activateTeamRequest, Date actualDate) {
+        if (!asyncActivation) {
+            checkPermissions(activateTeamRequest);
+            return checkUsersActiveTeams(activateTeamRequest.getMembers(), actualDate);
+        }
+        CompletableFuture<Void> permissions = CompletableFuture.runAsync(
+                () -> checkPermissions(activateTeamRequest), activateTeamExecutor);
+        CompletableFuture<List<String>> usersInTeams = CompletableFuture.supplyAsync(
+                () -> checkUsersActiveTeams(activateTeamRequest.getMembers(), actualDate),
+                activateTeamExecutor);
+        CompletableFuture.allOf(permissions, usersInTeams).exceptionally(ex -> null).join();
+        join(permissions);
+        return join(usersInTeams);
+    }
+
+    private <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw ex;
+        }
     }
 
     private void checkPermissions(TeamRequest teamRequest) {
@@ -97,7 +339,41 @@ public class TeamService {
     public Team getUserActiveTeam(String uuid) {
         Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
         log.debug("Started 'getUserActiveTeam' with uuid '{}' on date '{}'", uuid, actualDate);
-        List<Team> teams = teamRepository.getUserActiveTeams(uuid, actualDate);
+        List<Team> teams;
+        if (activeTeamsIndex.isReady()) {
+            teams = activeTeamsIndex.getUserActiveTeams(uuid, actualDate);
+        } else if (membershipLookup) {
+            teams = getMembershipTeam(uuid, actualDate);
+        } else {
+            teams = teamRepository.getUserActiveTeams(uuid, actualDate);
+        }
+        return getSingleTeam(uuid, actualDate, teams);
+    }
+
+    /**
+     * Finds active team of user by point reads of membership and team. If membership doesn't match the team,
+     * as repair of memberships hasn't happened yet, teams of user are queried.
+     */
+    private List<Team> getMembershipTeam(String uuid, Date actualDate) {
+        Membership membership = membershipRepository.getActiveMembership(uuid, actualDate);
+        if (membership == null) {
+            return Collections.emptyList();
+        }
+        Team team = teamRepository.getTeam(membership.getTeamId());
+        if (team != null && team.getMembers().contains(uuid) && !team.getActivateDate().after(actualDate) &&
+                team.getDeactivateDate().after(actualDate)) {
+            return Collections.singletonList(team);
+        }
+        log.warn("Membership of user '{}' in team '{}' doesn't match the team", uuid, membership.getTeamId());
+        return teamRepository.getUserActiveTeams(uuid, actualDate);
+    }
+
+    private List<String> checkUsersActiveTeams(Set<String> members, Date actualDate) {
+        return membershipLookup ? membershipRepository.getUsersInActiveTeams(members, actualDate) :
+                teamRepository.checkUsersActiveTeams(members, actualDate);
+    }
+
+    private Team getSingleTeam(String uuid, Date actualDate, List<Team> teams) {
         log.info("Finished 'getUserActiveTeam' with uuid '{}'. Teams size '{}'", uuid, teams.size());
         if (teams.size() == 1) {
             log.debug("Finished 'getUserActiveTeam' with uuid '{}' on date '{}' . Teams '{}'", uuid, actualDate, teams);
@@ -111,12 +387,114 @@ public class TeamService {
         }
     }
 
+    /**
+     * Returns active team of every user. Users not in team or in several teams are marked instead of exception.
+     */
+    public Map<String, UserTeam> getUsersActiveTeams(UsersTeamsRequest usersTeamsRequest) {
+        if (usersTeamsRequest == null || usersTeamsRequest.getUuids().size() > maxUsersTeamsSize) {
+            log.warn("Users teams Request is incorrect '{}'", usersTeamsRequest);
+            throw new IllegalArgumentException(String.format("Users teams Request must contain at most '%s' uuids",
+                    maxUsersTeamsSize));
+        }
+        Set<String> uuids = usersTeamsRequest.getUuids();
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        log.debug("Started 'getUsersActiveTeams' with uuids '{}' on date '{}'", uuids, actualDate);
+        Map<String, List<Team>> usersTeams = new HashMap<>();
+        if (activeTeamsIndex.isReady()) {
+            uuids.forEach(uuid -> usersTeams.put(uuid, activeTeamsIndex.getUserActiveTeams(uuid, actualDate)));
+        } else {
+            teamRepository.getUsersActiveTeams(uuids, actualDate).forEach(team -> team.getMembers().stream()
+                    .filter(uuids::contains)
+                    .forEach(uuid -> usersTeams.computeIfAbsent(uuid, key -> new ArrayList<>()).add(team)));
+        }
+        Map<String, UserTeam> result = new LinkedHashMap<>();
+        uuids.forEach(uuid -> {
+            List<Team> teams = usersTeams.getOrDefault(uuid, Collections.emptyList());
+            if (teams.isEmpty()) {
+                result.put(uuid, UserTeam.notInTeam());
+            } else if (teams.size() == 1) {
+                result.put(uuid, UserTeam.inTeam(teams.get(0)));
+            } else {
+                log.warn("User <{}> is in several teams on date '{}'", uuid, actualDate);
+                result.put(uuid, UserTeam.inSeveralTeams());
+            }
+        });
+        log.info("Finished 'getUsersActiveTeams'. Users size '{}'", result.size());
+        return result;
+    }
+
     public List<Team> getAllActiveTeams() {
         Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
         log.debug("Started 'getAllActiveTeams' on date '{}'", actualDate);
-        List<Team> teams = teamRepository.getAllActiveTeams(actualDate);
+        List<Team> teams = activeTeamsIndex.isReady() ? activeTeamsIndex.getAllActiveTeams(actualDate) :
+                teamRepository.getAllActiveTeams(actualDate);
         log.debug("Finished 'getAllActiveTeams'. Teams '{}'", teams);
         log.info("Finished 'getAllActiveTeams'. Teams size '{}'", teams.size());
         return teams;
     }
+
+    public long streamAllActiveTeams(Consumer<Team> consumer) {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        log.debug("Started 'streamAllActiveTeams' on date '{}'", actualDate);
+        long count;
+        if (activeTeamsIndex.isReady()) {
+            List<Team> teams = activeTeamsIndex.getAllActiveTeams(actualDate);
+            teams.forEach(consumer);
+            count = teams.size();
+        } else {
+            count = teamRepository.streamAllActiveTeams(actualDate, consumer);
+        }
+        log.info("Finished 'streamAllActiveTeams'. Teams size '{}'", count);
+        return count;
+    }
+
+    /**
+     * Returns page of active teams ordered by id. Page size is limited by max page size.
+     *
+     * @param token token of the page returned with previous page or null for the first page
+     * @param size  page size or null for default size
+     */
+    public TeamsPage getActiveTeamsPage(String token, Integer size) {
+        int pageSize = size == null ? defaultPageSize : Math.min(size, maxPageSize);
+        if (pageSize < 1) {
+            log.warn("Page size is incorrect '{}'", size);
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        String afterId = decodePageToken(token);
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        log.debug("Started 'getActiveTeamsPage' after '{}' with size '{}' on date '{}'", afterId, pageSize, actualDate);
+        List<Team> teams = activeTeamsIndex.isReady() ?
+                activeTeamsIndex.getActiveTeamsPage(actualDate, afterId, pageSize + 1) :
+                teamRepository.getActiveTeamsPage(actualDate, afterId, pageSize + 1);
+        String nextToken = null;
+        if (teams.size() > pageSize) {
+            teams = teams.subList(0, pageSize);
+            nextToken = encodePageToken(teams.get(pageSize - 1).getId());
+        }
+        log.info("Finished 'getActiveTeamsPage'. Teams size '{}'", teams.size());
+        return new TeamsPage(teams, nextToken);
+    }
+
+    private static String encodePageToken(String lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((PAGE_TOKEN_PREFIX + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodePageToken(String token) {
+        if (token == null) {
+            return null;
+        }
+        String value;
+        try {
+            value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            value = "";
+        }
+        String lastId = value.startsWith(PAGE_TOKEN_PREFIX) ? value.substring(PAGE_TOKEN_PREFIX.length()) : "";
+        if (!ObjectId.isValid(lastId)) {
+            log.warn("Page token is incorrect '{}'", token);
+            throw new IllegalArgumentException(String.format("Page token '%s' is incorrect", token));
+        }
+        return lastId;
+    }
 }
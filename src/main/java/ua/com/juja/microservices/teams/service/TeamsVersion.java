@@ -0,0 +1,157 @@
+package ua.com.juja.microservices.teams.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.dao.TeamSavedEvent;
+
+import javax.inject.Inject;
+import java.time.Instant;
+import java.time.ZoneId;
+
+/**
+ * Version of teams used for conditional requests. The version consists of version of the teams responses are built
+ * from and of the start of current day, when activate and deactivate dates of teams pass.
+ * <p>
+ * Version of teams in the storage is changed by every write of any instance of the service. It is read at most once
+ * per check interval, so writes of other instances are seen in check interval. If active teams index is used,
+ * the index is rebuilt when the storage version changes and the version of the index is used, so an ETag never
+ * tags teams older than the index has. Otherwise the storage version is read like teams are and is read again on
+ * the next request after a team is saved by this instance. If the storage version can't be read, a new version
+ * is used, so clients are not answered with not modified teams.
+ * <p>
+ * Last modified time has seconds precision as HTTP dates, so every change moves it at least one second forward.
+ *
+ * @author Ivan Shapovalov
+ */
+@Component
+@Slf4j
+public class TeamsVersion {
+    private static final long SECOND = 1000;
+
+    @Inject
+    private TeamRepository teamRepository;
+
+    @Inject
+    private ActiveTeamsIndex activeTeamsIndex;
+
+    @Value("${teams.version.checkMs}")
+    private long checkMs;
+
+    private String storageVersion;
+    /** Version of teams which the current ETag is built from */
+    private String version;
+    private long lastModified = System.currentTimeMillis() / SECOND * SECOND;
+    private long dayStart = dayStart(System.currentTimeMillis());
+    private long nextDayStart = nextDayStart(System.currentTimeMillis());
+    private long nextCheck;
+    /** Number of the last started read of storage version and of the last applied one */
+    private long startedChecks;
+    private long appliedChecks;
+
+    public String getETag() {
+        checkVersion();
+        synchronized (this) {
+            return String.format("\"%s-%d\"", version, dayStart);
+        }
+    }
+
+    public long getLastModified() {
+        checkVersion();
+        synchronized (this) {
+            return lastModified;
+        }
+    }
+
+    /**
+     * Makes the next request read version of the storage, as teams are known to be changed.
+     */
+    public synchronized void invalidate() {
+        nextCheck = 0;
+    }
+
+    /**
+     * Active teams index is updated with the saved team and changes its version, so the storage version is read
+     * again only if the index is not used.
+     */
+    @EventListener
+    public void onTeamSaved(TeamSavedEvent event) {
+        if (!activeTeamsIndex.isReady()) {
+            invalidate();
+        }
+    }
+
+    private void checkVersion() {
+        long now = System.currentTimeMillis();
+        long check = 0;
+        synchronized (this) {
+            if (now >= nextDayStart) {
+                dayStart = dayStart(now);
+                nextDayStart = nextDayStart(now);
+                changed(now);
+            }
+            if (storageVersion == null || now >= nextCheck) {
+                nextCheck = now + checkMs;
+                check = ++startedChecks;
+            }
+        }
+        if (check > 0) {
+            readStorageVersion(check, now);
+        }
+        boolean indexed = activeTeamsIndex.isReady();
+        String actual = indexed ? activeTeamsIndex.getVersion() : null;
+        synchronized (this) {
+            if (!indexed) {
+                actual = storageVersion;
+            }
+            if (actual.equals(version)) {
+                return;
+            }
+            if (version != null) {
+                changed(now);
+            }
+            version = actual;
+            log.debug("Teams version is changed to '{}'", actual);
+        }
+    }
+
+    /**
+     * Reads version of teams in the storage and rebuilds active teams index if the version changed, before the
+     * version is used.
+     */
+    private void readStorageVersion(long check, long now) {
+        String read;
+        try {
+            read = teamRepository.getVersion();
+            if (activeTeamsIndex.isReady()) {
+                activeTeamsIndex.sync(read);
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Version of teams is not read: [{}]", ex.getMessage());
+            read = "unknown" + now;
+        }
+        synchronized (this) {
+            if (check > appliedChecks) {
+                appliedChecks = check;
+                storageVersion = read;
+            }
+        }
+    }
+
+    private void changed(long now) {
+        lastModified = Math.max(now / SECOND * SECOND, lastModified + SECOND);
+    }
+
+    private static long dayStart(long time) {
+        ZoneId zone = ZoneId.systemDefault();
+        return Instant.ofEpochMilli(time).atZone(zone).toLocalDate().atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+
+    private static long nextDayStart(long time) {
+        ZoneId zone = ZoneId.systemDefault();
+        return Instant.ofEpochMilli(time).atZone(zone).toLocalDate().plusDays(1)
+                .atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+}
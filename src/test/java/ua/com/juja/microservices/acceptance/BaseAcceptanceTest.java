@@ -11,6 +11,7 @@ import org.junit.Rule;
 import org.springframework.boot.context.embedded.LocalServerPort;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
 import ua.com.juja.microservices.teams.Teams;
 
 import static com.lordofthejars.nosqlunit.mongodb.MongoDbConfigurationBuilder.mongoDb;
@@ -18,6 +19,8 @@ import static io.restassured.RestAssured.given;
 import static org.springframework.boot.test.context.SpringBootTest.WebEnvironment.RANDOM_PORT;
 
 @SpringBootTest(webEnvironment = RANDOM_PORT, classes = {Teams.class})
+@TestPropertySource(properties = {"keepers.cache.enabled=false", "keepers.preload.enabled=false",
+        "teams.activeIndex.enabled=false"})
 @DirtiesContext
 public class BaseAcceptanceTest {
 
@@ -0,0 +1,154 @@
+package ua.com.juja.microservices.benchmark;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBCollection;
+import com.mongodb.DBObject;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.com.juja.microservices.teams.Teams;
+import ua.com.juja.microservices.teams.dao.impl.MongoTeamRepository;
+import ua.com.juja.microservices.teams.dao.impl.MongoTeamRepository.CheckStrategy;
+import ua.com.juja.microservices.teams.dao.impl.TeamIndexManager;
+
+import javax.inject.Inject;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares strategies of {@link MongoTeamRepository#checkUsersActiveTeams} on generated teams history.
+ * Needs running MongoDB, as acceptance tests do. Run with {@code ./gradlew benchmark}, dataset sizes may be
+ * changed with system property {@code benchmark.teams}, which the task passes to tests, e.g.
+ * {@code ./gradlew benchmark -Dbenchmark.teams=10000,100000}.
+ *
+ * @author Ivan Shapovalov
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = Teams.class)
+@TestPropertySource(properties = {"spring.data.mongodb.collection=teamsBenchmark", "keepers.preload.enabled=false"})
+public class CheckUsersActiveTeamsBenchmark {
+    private static final String DEFAULT_DATASETS = "10000,100000,1000000";
+    private static final int TEAM_SIZE = 4;
+    private static final int ACTIVE_TEAMS_RATE = 10;
+    private static final int INSERT_BATCH_SIZE = 10_000;
+    private static final int WARMUP_REQUESTS = 200;
+    private static final int MEASURED_REQUESTS = 1_000;
+
+    @Inject
+    private MongoTeamRepository teamRepository;
+    @Inject
+    private TeamIndexManager teamIndexManager;
+    @Inject
+    private MongoTemplate mongoTemplate;
+
+    @Value("${spring.data.mongodb.collection}")
+    private String mongoCollectionName;
+
+    @After
+    public void tearDown() {
+        mongoTemplate.dropCollection(mongoCollectionName);
+        ReflectionTestUtils.setField(teamRepository, "checkStrategy", CheckStrategy.AGGREGATION);
+    }
+
+    @Test
+    public void compareCheckUsersActiveTeamsStrategies() {
+        Date actualDate = new Date();
+        System.out.println(String.format("%10s %12s %12s %12s", "teams", "strategy", "avg, us", "p99, us"));
+        for (String datasetSize : System.getProperty("benchmark.teams", DEFAULT_DATASETS).split(",")) {
+            int teams = Integer.parseInt(datasetSize.trim());
+            fillCollection(teams, actualDate);
+            teamIndexManager.ensureIndexes();
+            List<Set<String>> requests = generateRequests(teams);
+            for (CheckStrategy strategy : CheckStrategy.values()) {
+                ReflectionTestUtils.setField(teamRepository, "checkStrategy", strategy);
+                long[] durations = measure(requests, actualDate);
+                System.out.println(String.format("%10d %12s %12d %12d", teams, strategy,
+                        Arrays.stream(durations).sum() / durations.length,
+                        durations[durations.length * 99 / 100]));
+            }
+            checkStrategiesReturnSameUsers(requests, actualDate);
+        }
+    }
+
+    private void fillCollection(int teams, Date actualDate) {
+        mongoTemplate.dropCollection(mongoCollectionName);
+        DBCollection collection = mongoTemplate.getCollection(mongoCollectionName);
+        Random random = new Random(teams);
+        Instant now = actualDate.toInstant();
+        List<DBObject> batch = new ArrayList<>(INSERT_BATCH_SIZE);
+        for (int i = 0; i < teams; i++) {
+            boolean active = i % ACTIVE_TEAMS_RATE == 0;
+            Instant activateDate = active ? now.minus(1, ChronoUnit.DAYS) : now.minus(400, ChronoUnit.DAYS);
+            Instant deactivateDate = active ? now.plus(30, ChronoUnit.DAYS) : now.minus(370, ChronoUnit.DAYS);
+            batch.add(new BasicDBObject("from", "uuid-from")
+                    .append("members", randomMembers(random, teams))
+                    .append("activateDate", Date.from(activateDate))
+                    .append("deactivateDate", Date.from(deactivateDate)));
+            if (batch.size() == INSERT_BATCH_SIZE) {
+                collection.insert(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            collection.insert(batch);
+        }
+    }
+
+    private List<Set<String>> generateRequests(int teams) {
+        Random random = new Random(-teams);
+        List<Set<String>> requests = new ArrayList<>();
+        for (int i = 0; i < WARMUP_REQUESTS + MEASURED_REQUESTS; i++) {
+            requests.add(new HashSet<>(randomMembers(random, teams)));
+        }
+        return requests;
+    }
+
+    private long[] measure(List<Set<String>> requests, Date actualDate) {
+        for (int i = 0; i < WARMUP_REQUESTS; i++) {
+            teamRepository.checkUsersActiveTeams(requests.get(i), actualDate);
+        }
+        long[] durations = new long[MEASURED_REQUESTS];
+        for (int i = 0; i < MEASURED_REQUESTS; i++) {
+            long start = System.nanoTime();
+            teamRepository.checkUsersActiveTeams(requests.get(WARMUP_REQUESTS + i), actualDate);
+            durations[i] = (System.nanoTime() - start) / 1_000;
+        }
+        Arrays.sort(durations);
+        return durations;
+    }
+
+    private void checkStrategiesReturnSameUsers(List<Set<String>> requests, Date actualDate) {
+        for (Set<String> request : requests.subList(0, WARMUP_REQUESTS)) {
+            ReflectionTestUtils.setField(teamRepository, "checkStrategy", CheckStrategy.AGGREGATION);
+            List<String> expected = teamRepository.checkUsersActiveTeams(request, actualDate);
+            ReflectionTestUtils.setField(teamRepository, "checkStrategy", CheckStrategy.FIND);
+            assertEquals(expected, teamRepository.checkUsersActiveTeams(request, actualDate));
+        }
+    }
+
+    private List<String> randomMembers(Random random, int users) {
+        List<String> members = new ArrayList<>(TEAM_SIZE);
+        while (members.size() < TEAM_SIZE) {
+            String member = "uuid" + random.nextInt(users);
+            if (!members.contains(member)) {
+                members.add(member);
+            }
+        }
+        return members;
+    }
+}
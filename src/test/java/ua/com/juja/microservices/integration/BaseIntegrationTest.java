@@ -9,11 +9,14 @@ import com.mongodb.MongoClient;
 import ua.com.juja.microservices.teams.Teams;
 import org.junit.Rule;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.web.context.WebApplicationContext;
 
 import javax.inject.Inject;
 
 @SpringBootTest(classes = {TeamsTestConfig.class, Teams.class})
+@TestPropertySource(properties = {"keepers.cache.enabled=false", "keepers.preload.enabled=false",
+        "teams.activeIndex.enabled=false"})
 public class BaseIntegrationTest {
 
     @Rule
@@ -16,7 +16,7 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.RestTemplate;
-import ua.com.juja.microservices.teams.dao.impl.TeamRepository;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
 import ua.com.juja.microservices.teams.entity.Team;
 import ua.com.juja.microservices.teams.entity.impl.ActivateTeamRequest;
 import ua.com.juja.microservices.teams.entity.impl.DeactivateTeamRequest;
@@ -5,28 +5,47 @@ import org.eclipse.jetty.http.HttpMethod;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 import ua.com.juja.microservices.Utils;
+import ua.com.juja.microservices.teams.entity.ActivateTeamsRequest;
+import ua.com.juja.microservices.teams.entity.DeactivateTeamsRequest;
 import ua.com.juja.microservices.teams.entity.Team;
+import ua.com.juja.microservices.teams.entity.TeamResult;
+import ua.com.juja.microservices.teams.entity.TeamsPage;
+import ua.com.juja.microservices.teams.entity.UserTeam;
+import ua.com.juja.microservices.teams.entity.UsersTeamsRequest;
 import ua.com.juja.microservices.teams.entity.impl.ActivateTeamRequest;
 import ua.com.juja.microservices.teams.entity.impl.DeactivateTeamRequest;
 import ua.com.juja.microservices.teams.exceptions.UserAlreadyInTeamException;
 import ua.com.juja.microservices.teams.exceptions.UserInSeveralTeamsException;
 import ua.com.juja.microservices.teams.exceptions.UserNotInTeamException;
+import ua.com.juja.microservices.teams.service.ActiveTeamsCache;
+import ua.com.juja.microservices.teams.service.TeamHistoryService;
 import ua.com.juja.microservices.teams.service.TeamService;
+import ua.com.juja.microservices.teams.service.TeamsVersion;
 
 import javax.inject.Inject;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static net.javacrumbs.jsonunit.core.util.ResourceUtils.resource;
@@ -36,6 +55,7 @@ import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -44,6 +64,7 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 /**
@@ -61,13 +82,35 @@ public class TeamControllerTest {
     private String teamsGetTeamUrl;
     @Value("${teams.endpoint.getAllTeams}")
     private String teamsGetAllTeamsUrl;
+    @Value("${teams.endpoint.getUsersTeams}")
+    private String teamsGetUsersTeamsUrl;
+    @Value("${teams.endpoint.activateTeams}")
+    private String teamsActivateTeamsUrl;
+    @Value("${teams.endpoint.deactivateTeams}")
+    private String teamsDeactivateTeamsUrl;
+    @Value("${teams.endpoint.getUserTeamsHistory}")
+    private String teamsGetUserTeamsHistoryUrl;
+    @Value("${teams.endpoint.getUserTeamsTimeline}")
+    private String teamsGetUserTeamsTimelineUrl;
 
     @Inject
     private MockMvc mockMvc;
 
+    @Inject
+    private TeamController teamController;
+
     @MockBean
     private TeamService teamService;
 
+    @MockBean
+    private TeamHistoryService teamHistoryService;
+
+    @MockBean
+    private TeamsVersion teamsVersion;
+
+    @MockBean
+    private ActiveTeamsCache activeTeamsCache;
+
     @Test
     public void activateTeamIfSomeUsersInActiveTeams() throws Exception {
         String jsonContentRequest = Utils.convertToString(resource
@@ -211,6 +254,216 @@ public class TeamControllerTest {
         assertEquals(expected, result);
     }
 
+    @Test
+    public void getAllActiveTeamsIfETagMatchesReturnsNotModified() throws Exception {
+        String eTag = "\"1-1\"";
+        when(teamsVersion.getETag()).thenReturn(eTag);
+        when(teamsVersion.getLastModified()).thenReturn(1000L);
+
+        mockMvc.perform(get(teamsGetAllTeamsUrl).header("If-None-Match", eTag))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", eTag));
+
+        verifyNoMoreInteractions(teamService);
+    }
+
+    @Test
+    public void getTeamByUuidIfETagMatchesReturnsNotModified() throws Exception {
+        String eTag = "\"1-1\"";
+        when(teamsVersion.getETag()).thenReturn(eTag);
+        when(teamsVersion.getLastModified()).thenReturn(1000L);
+
+        mockMvc.perform(get(teamsGetTeamUrl + "/uuid-in-team").header("If-None-Match", eTag))
+                .andExpect(status().isNotModified());
+
+        verifyNoMoreInteractions(teamService);
+    }
+
+    @Test
+    public void getAllActiveTeamsIfETagChangedReturnsTeamsWithNewETag() throws Exception {
+        final Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        when(teamsVersion.getETag()).thenReturn("\"1-2\"");
+        when(teamsVersion.getLastModified()).thenReturn(2000L);
+        when(teamService.getAllActiveTeams()).thenReturn(Collections.singletonList(team));
+
+        String result = mockMvc.perform(get(teamsGetAllTeamsUrl).header("If-None-Match", "\"1-1\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1-2\""))
+                .andReturn().getResponse().getContentAsString();
+
+        verify(teamService).getAllActiveTeams();
+        verifyNoMoreInteractions(teamService);
+        assertEquals("[" + Utils.convertToJSON(team) + "]", result);
+    }
+
+    @Test
+    public void getAllActiveTeamsIfStreamingEnabledWritesTeams() throws Exception {
+        final Team team1 = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        final Team team2 = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid5", "uuid6", "uuid7", "uuid8")));
+        final List<Team> teams = Arrays.asList(team1, team2);
+        String expected = "[" + teams.stream().map(Utils::convertToJSON)
+                .collect(Collectors.joining(",")) + "]";
+        when(teamService.streamAllActiveTeams(any())).thenAnswer(invocation -> {
+            Consumer<Team> consumer = teamConsumer(invocation, 0);
+            teams.forEach(consumer);
+            return (long) teams.size();
+        });
+        ReflectionTestUtils.setField(teamController, "streamingEnabled", true);
+
+        String result;
+        try {
+            result = mockMvc.perform(get(teamsGetAllTeamsUrl))
+                    .andExpect(status().isOk())
+                    .andExpect(content().contentType(APPLICATION_JSON_UTF8))
+                    .andReturn().getResponse().getContentAsString();
+        } finally {
+            ReflectionTestUtils.setField(teamController, "streamingEnabled", false);
+        }
+
+        verify(teamService).streamAllActiveTeams(any());
+        verifyNoMoreInteractions(teamService);
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void getAllActiveTeamsIfCacheEnabledWritesCachedJson() throws Exception {
+        final Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        String expected = "[" + Utils.convertToJSON(team) + "]";
+        when(activeTeamsCache.isEnabled()).thenReturn(true);
+        when(activeTeamsCache.getAllActiveTeams()).thenReturn(new ActiveTeamsCache.Entry(LocalDate.now(), "\"1-1\"",
+                Collections.singletonList(team), expected.getBytes(StandardCharsets.UTF_8)));
+
+        String result = mockMvc.perform(get(teamsGetAllTeamsUrl))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(APPLICATION_JSON_UTF8))
+                .andReturn().getResponse().getContentAsString();
+
+        verify(activeTeamsCache).getAllActiveTeams();
+        verifyNoMoreInteractions(teamService);
+        assertEquals(expected, result);
+    }
+
+    @Test
+    public void getAllActiveTeamsIfStreamingAndCacheEnabledStreamsTeams() throws Exception {
+        final Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        when(activeTeamsCache.isEnabled()).thenReturn(true);
+        when(teamService.streamAllActiveTeams(any())).thenAnswer(invocation -> {
+            teamConsumer(invocation, 0).accept(team);
+            return 1L;
+        });
+        ReflectionTestUtils.setField(teamController, "streamingEnabled", true);
+
+        String result;
+        try {
+            result = getGoodResult(teamsGetAllTeamsUrl);
+        } finally {
+            ReflectionTestUtils.setField(teamController, "streamingEnabled", false);
+        }
+
+        verify(teamService).streamAllActiveTeams(any());
+        verify(activeTeamsCache, never()).getAllActiveTeams();
+        assertEquals("[" + Utils.convertToJSON(team) + "]", result);
+    }
+
+    @Test
+    public void getAllActiveTeamsWithPageSizeReturnsPage() throws Exception {
+        final Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        when(teamService.getActiveTeamsPage("token", 1))
+                .thenReturn(new TeamsPage(Collections.singletonList(team), "next-token"));
+
+        String result = getGoodResult(teamsGetAllTeamsUrl + "?size=1&token=token");
+
+        verify(teamService).getActiveTeamsPage("token", 1);
+        verifyNoMoreInteractions(teamService);
+        assertEquals("{\"teams\":[" + Utils.convertToJSON(team) + "],\"nextToken\":\"next-token\"}", result);
+    }
+
+    @Test
+    public void getUserTeamsHistoryAtMomentReturnsTeams() throws Exception {
+        final Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        Date at = Date.from(Instant.parse("2017-04-10T00:00:00Z"));
+        when(teamHistoryService.getTeamsHistory("uuid1", at, null, null)).thenReturn(Collections.singletonList(team));
+
+        String result = getGoodResult(teamsGetUserTeamsHistoryUrl + "/uuid1?at=2017-04-10T00:00:00Z");
+
+        verify(teamHistoryService).getTeamsHistory("uuid1", at, null, null);
+        verifyNoMoreInteractions(teamHistoryService, teamService);
+        assertEquals("[" + Utils.convertToJSON(team) + "]", result);
+    }
+
+    @Test
+    public void getUserTeamsTimelineReturnsPage() throws Exception {
+        final Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        when(teamHistoryService.getUserTeamsTimeline("uuid1", "token", 1))
+                .thenReturn(new TeamsPage(Collections.singletonList(team), "next-token"));
+
+        String result = getGoodResult(teamsGetUserTeamsTimelineUrl + "/uuid1?size=1&token=token");
+
+        verify(teamHistoryService).getUserTeamsTimeline("uuid1", "token", 1);
+        verifyNoMoreInteractions(teamHistoryService, teamService);
+        assertEquals("{\"teams\":[" + Utils.convertToJSON(team) + "],\"nextToken\":\"next-token\"}", result);
+    }
+
+    @Test
+    public void getUsersTeamsReturnsTeamOrMarkerOfEveryUser() throws Exception {
+        final Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        Map<String, UserTeam> teams = new LinkedHashMap<>();
+        teams.put("uuid1", UserTeam.inTeam(team));
+        teams.put("uuid-not-in-team", UserTeam.notInTeam());
+        when(teamService.getUsersActiveTeams(any(UsersTeamsRequest.class))).thenReturn(teams);
+
+        String result = getGoodJsonResult(teamsGetUsersTeamsUrl, HttpMethod.POST,
+                "{\"uuids\":[\"uuid1\",\"uuid-not-in-team\"]}");
+
+        ArgumentCaptor<UsersTeamsRequest> captor = ArgumentCaptor.forClass(UsersTeamsRequest.class);
+        verify(teamService).getUsersActiveTeams(captor.capture());
+        assertThat(captor.getValue().getUuids(), containsInAnyOrder("uuid1", "uuid-not-in-team"));
+        verifyNoMoreInteractions(teamService);
+        assertEquals("{\"uuid1\":{\"status\":\"IN_TEAM\",\"team\":" + Utils.convertToJSON(team) + "}," +
+                "\"uuid-not-in-team\":{\"status\":\"NOT_IN_TEAM\"}}", result);
+    }
+
+    @Test
+    public void activateTeamsReturnsResultOfEveryRequest() throws Exception {
+        final Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        List<TeamResult> results = Arrays.asList(TeamResult.success(team),
+                TeamResult.failed("User(s) '#uuid4#' exist(s) in another teams"));
+        when(teamService.activateTeams(any(ActivateTeamsRequest.class))).thenReturn(results);
+
+        String result = getGoodJsonResult(teamsActivateTeamsUrl, HttpMethod.POST,
+                "{\"teams\":[{\"from\":\"uuid-from\",\"members\":[\"uuid1\",\"uuid2\",\"uuid3\",\"uuid4\"]}," +
+                        "{\"from\":\"uuid-from\",\"members\":[\"uuid4\",\"uuid5\",\"uuid6\",\"uuid7\"]}]}");
+
+        ArgumentCaptor<ActivateTeamsRequest> captor = ArgumentCaptor.forClass(ActivateTeamsRequest.class);
+        verify(teamService).activateTeams(captor.capture());
+        assertEquals(2, captor.getValue().getTeams().size());
+        verifyNoMoreInteractions(teamService);
+        assertEquals("[{\"status\":\"SUCCESS\",\"team\":" + Utils.convertToJSON(team) + "}," +
+                "{\"status\":\"FAILED\",\"message\":\"User(s) '#uuid4#' exist(s) in another teams\"}]", result);
+    }
+
+    @Test
+    public void activateTeamsIfRequestWithoutFromReturnsBadRequest() throws Exception {
+        getBadJsonResult(teamsActivateTeamsUrl, HttpMethod.POST,
+                "{\"teams\":[{\"members\":[\"uuid1\",\"uuid2\",\"uuid3\",\"uuid4\"]}]}");
+
+        verifyNoMoreInteractions(teamService);
+    }
+
+    @Test
+    public void deactivateTeamsReturnsResultOfEveryRequest() throws Exception {
+        List<TeamResult> results = Collections.singletonList(
+                TeamResult.failed("User with uuid 'uuid1' not in team now"));
+        when(teamService.deactivateTeams(any(DeactivateTeamsRequest.class))).thenReturn(results);
+
+        String result = getGoodJsonResult(teamsDeactivateTeamsUrl, HttpMethod.PUT,
+                "{\"teams\":[{\"from\":\"uuid-from\",\"uuid\":\"uuid1\"}]}");
+
+        verify(teamService).deactivateTeams(any(DeactivateTeamsRequest.class));
+        verifyNoMoreInteractions(teamService);
+        assertEquals("[{\"status\":\"FAILED\",\"message\":\"User with uuid 'uuid1' not in team now\"}]", result);
+    }
+
     private String getGoodResult(String uri) throws Exception {
         MockHttpServletRequestBuilder builder;
         if (HttpMethod.GET == HttpMethod.GET) {
@@ -272,4 +525,9 @@ public class TeamControllerTest {
                 .andExpect(status().isBadRequest())
                 .andReturn().getResponse().getContentAsString();
     }
-}
\ No newline at end of file
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<Team> teamConsumer(InvocationOnMock invocation, int index) {
+        return invocation.getArgumentAt(index, Consumer.class);
+    }
+}
@@ -0,0 +1,151 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * @author Ivan Shapovalov
+ */
+public class JournalTeamRepositoryTest {
+    private static final Date ACTIVATE_DATE = new Date(1500000000123L);
+    private static final Date DEACTIVATE_DATE = new Date(1600000000456L);
+    private static final Date ACTUAL_DATE = new Date(1550000000000L);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File journalDirectory;
+    private JournalTeamRepository teamRepository;
+
+    @Before
+    public void setup() throws IOException {
+        journalDirectory = folder.newFolder("journal");
+        teamRepository = open();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        teamRepository.shutdown();
+    }
+
+    @Test
+    public void saveTeamIndexesMembersAndSetsId() {
+        Team team = teamRepository.saveTeam(team("uuid1", "uuid2"));
+
+        assertEquals(24, team.getId().length());
+        assertEquals(Collections.singletonList(team), teamRepository.getUserActiveTeams("uuid2", ACTUAL_DATE));
+        assertEquals(Collections.singletonList("uuid1"),
+                teamRepository.checkUsersActiveTeams(new HashSet<>(Arrays.asList("uuid1", "uuid3")), ACTUAL_DATE));
+        assertTrue(teamRepository.getUserActiveTeams("uuid2", DEACTIVATE_DATE).isEmpty());
+    }
+
+    @Test
+    public void deactivateUserActiveTeamIfUserInSeveralTeamsDoesNotDeactivate() {
+        teamRepository.saveTeam(team("uuid1", "uuid2"));
+        teamRepository.saveTeam(team("uuid1", "uuid3"));
+
+        List<Team> actual = teamRepository.deactivateUserActiveTeam("uuid1", ACTUAL_DATE);
+
+        assertEquals(2, actual.size());
+        assertEquals(2, teamRepository.getUserActiveTeams("uuid1", ACTUAL_DATE).size());
+    }
+
+    @Test
+    public void openRecoversTeamsFromJournalWithMilliseconds() throws IOException {
+        Team saved = teamRepository.saveTeam(team("uuid1", "uuid2"));
+        Team deactivated = teamRepository.saveTeam(team("uuid3"));
+        teamRepository.deactivateUserActiveTeam("uuid3", ACTUAL_DATE);
+        closeWithoutSnapshot();
+
+        teamRepository = open();
+
+        assertEquals(Collections.singletonList(saved), teamRepository.getAllActiveTeams(ACTUAL_DATE));
+        List<Team> history = teamRepository.getTeamsActiveBetween("uuid3", ACTIVATE_DATE, DEACTIVATE_DATE);
+        assertEquals(1, history.size());
+        assertEquals(deactivated.getId(), history.get(0).getId());
+        assertEquals(ACTUAL_DATE, history.get(0).getDeactivateDate());
+    }
+
+    @Test
+    public void openIgnoresTornTailOfJournal() throws IOException {
+        Team saved = teamRepository.saveTeam(team("uuid1"));
+        teamRepository.saveTeam(team("uuid2"));
+        closeWithoutSnapshot();
+        File log = new File(journalDirectory, "teams-0.log");
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        teamRepository = open();
+
+        assertEquals(Collections.singletonList(saved), teamRepository.getAllActiveTeams(ACTUAL_DATE));
+        Team next = teamRepository.saveTeam(team("uuid3"));
+        closeWithoutSnapshot();
+        teamRepository = open();
+        assertEquals(Arrays.asList(saved, next), teamRepository.getAllActiveTeams(ACTUAL_DATE));
+    }
+
+    @Test
+    public void snapshotRemovesOldJournalAndKeepsTeams() throws IOException {
+        Team first = teamRepository.saveTeam(team("uuid1"));
+        teamRepository.snapshot();
+        Team second = teamRepository.saveTeam(team("uuid2"));
+        closeWithoutSnapshot();
+
+        assertFalse(new File(journalDirectory, "teams-0.log").exists());
+        assertTrue(new File(journalDirectory, "teams.snapshot").exists());
+        teamRepository = open();
+        assertEquals(Arrays.asList(first, second), teamRepository.getAllActiveTeams(ACTUAL_DATE));
+    }
+
+    @Test
+    public void getUserTeamsTimelineContinuesAfterLastTeam() {
+        Team first = teamRepository.saveTeam(team("uuid1"));
+        Team second = teamRepository.saveTeam(team("uuid1"));
+
+        List<Team> actual = teamRepository.getUserTeamsTimeline("uuid1", first.getActivateDate(), first.getId(), 10);
+
+        assertEquals(Collections.singletonList(second), actual);
+    }
+
+    private JournalTeamRepository open() throws IOException {
+        JournalTeamRepository repository = new JournalTeamRepository();
+        ReflectionTestUtils.setField(repository, "journalDirectory", journalDirectory.getPath());
+        ReflectionTestUtils.setField(repository, "segmentBytes", 64);
+        ReflectionTestUtils.setField(repository, "fsync", false);
+        ReflectionTestUtils.setField(repository, "eventPublisher", mock(ApplicationEventPublisher.class));
+        repository.init();
+        return repository;
+    }
+
+    private void closeWithoutSnapshot() throws IOException {
+        ((TeamJournal) ReflectionTestUtils.getField(teamRepository, "journal")).close();
+    }
+
+    private static Team team(String... members) {
+        Team team = new Team("uuid-from", new HashSet<>(Arrays.asList(members)));
+        team.setActivateDate(ACTIVATE_DATE);
+        team.setDeactivateDate(DEACTIVATE_DATE);
+        return team;
+    }
+}
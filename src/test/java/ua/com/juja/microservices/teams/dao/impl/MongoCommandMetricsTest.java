@@ -0,0 +1,84 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import com.mongodb.ServerAddress;
+import com.mongodb.connection.ClusterId;
+import com.mongodb.connection.ConnectionDescription;
+import com.mongodb.connection.ServerId;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonNull;
+import org.bson.BsonString;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ivan Shapovalov
+ */
+public class MongoCommandMetricsTest {
+    private static final ConnectionDescription CONNECTION =
+            new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()));
+
+    private final MongoCommandMetrics commandMetrics = new MongoCommandMetrics();
+
+    @Before
+    public void setup() {
+        ReflectionTestUtils.setField(commandMetrics, "slowQueryThresholdMs", 100L);
+        ReflectionTestUtils.setField(commandMetrics, "explainEnabled", false);
+    }
+
+    @After
+    public void tearDown() {
+        commandMetrics.shutdown();
+    }
+
+    @Test
+    public void commandSucceededRecordsLatencyAndDocumentsByCommandAndOperation() {
+        BsonDocument response = new BsonDocument("cursor", new BsonDocument("firstBatch",
+                new BsonArray(Arrays.asList(new BsonDocument(), new BsonDocument()))));
+
+        commandMetrics.run("getUserActiveTeams", () -> {
+            commandMetrics.commandStarted(new CommandStartedEvent(1, CONNECTION, "teams", "find",
+                    new BsonDocument("find", new BsonString("teams"))));
+            commandMetrics.commandSucceeded(new CommandSucceededEvent(1, CONNECTION, "find", response,
+                    TimeUnit.MILLISECONDS.toNanos(7)));
+        });
+
+        LatencyHistogram command = commandMetrics.getCommandHistogram("find");
+        assertEquals(1, command.getCount());
+        assertEquals(1, command.getBucket(2));
+        assertEquals(1, commandMetrics.getOperationHistogram("getUserActiveTeams").getCount());
+        assertTrue(commandMetrics.metrics().stream().anyMatch(metric ->
+                metric.getName().equals("teams.repository.getUserActiveTeams.documents") &&
+                        metric.getValue().longValue() == 2));
+    }
+
+    @Test
+    public void commandSucceededAboveThresholdCountsSlowCommand() {
+        commandMetrics.commandStarted(new CommandStartedEvent(2, CONNECTION, "teams", "count",
+                new BsonDocument("count", new BsonString("teams"))));
+        commandMetrics.commandSucceeded(new CommandSucceededEvent(2, CONNECTION, "count",
+                new BsonDocument("n", new BsonInt32(5)), TimeUnit.MILLISECONDS.toNanos(150)));
+
+        assertTrue(commandMetrics.metrics().stream().anyMatch(metric ->
+                metric.getName().equals("mongo.commands.slow") && metric.getValue().longValue() == 1));
+        assertTrue(commandMetrics.metrics().stream().anyMatch(metric ->
+                metric.getName().equals("mongo.commands.count.documents") && metric.getValue().longValue() == 5));
+    }
+
+    @Test
+    public void returnedDocumentsOfFindAndModifyWithoutValueIsZero() {
+        assertEquals(0, MongoCommandMetrics.returnedDocuments(new BsonDocument("value", new BsonNull())));
+        assertEquals(1, MongoCommandMetrics.returnedDocuments(new BsonDocument("value", new BsonDocument())));
+    }
+}
@@ -0,0 +1,184 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import ua.com.juja.microservices.integration.BaseIntegrationTest;
+import ua.com.juja.microservices.teams.entity.Membership;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Ivan Shapovalov
+ */
+@RunWith(SpringRunner.class)
+public class MongoMembershipRepositoryTest extends BaseIntegrationTest {
+
+    @Inject
+    private MongoMembershipRepository membershipRepository;
+
+    @Inject
+    private MongoTemplate mongoTemplate;
+
+    @Value("${spring.data.mongodb.membershipCollection}")
+    private String membershipCollectionName;
+
+    @Before
+    public void setup() {
+        mongoTemplate.dropCollection(membershipCollectionName);
+    }
+
+    @Test
+    public void reserveMembersIfMembersFreeReservesAllMembers() {
+        Team team = team("team1", "uuid1", "uuid2", "uuid3", "uuid4");
+
+        String actual = membershipRepository.reserveMembers(team, new Date());
+
+        assertNull(actual);
+        assertEquals(4, mongoTemplate.count(null, membershipCollectionName));
+        assertEquals("team1", membership("uuid3").getTeamId());
+    }
+
+    @Test
+    public void reserveMembersIfMemberReservedReturnsMemberAndReleasesReservedMembers() {
+        Date actualDate = new Date();
+        membershipRepository.reserveMembers(team("team1", "uuid1", "uuid2", "uuid3", "uuid4"), actualDate);
+
+        String actual = membershipRepository.reserveMembers(team("team2", "uuid0", "uuid4", "uuid5", "uuid6"),
+                actualDate);
+
+        assertEquals("uuid4", actual);
+        assertEquals(4, mongoTemplate.count(null, membershipCollectionName));
+        assertEquals("team1", membership("uuid4").getTeamId());
+        assertNull(membership("uuid0"));
+    }
+
+    @Test
+    public void reserveMembersIfTeamDeactivatedReservesItsMembers() {
+        Date actualDate = new Date();
+        Team deactivated = team("team1", "uuid1", "uuid2", "uuid3", "uuid4");
+        membershipRepository.reserveMembers(deactivated, actualDate);
+        deactivated.setDeactivateDate(actualDate);
+        membershipRepository.deactivateMembers(deactivated);
+
+        String actual = membershipRepository.reserveMembers(team("team2", "uuid1", "uuid2", "uuid3", "uuid4"),
+                new Date(actualDate.getTime() + 1));
+
+        assertNull(actual);
+        assertEquals("team2", membership("uuid1").getTeamId());
+    }
+
+    @Test
+    public void reserveMembersOfTeamsReleasesOnlyTeamsWithReservedMember() {
+        Date actualDate = new Date();
+        membershipRepository.reserveMembers(team("team1", "uuid1", "uuid2", "uuid3", "uuid4"), actualDate);
+        Team expired = team("team2", "uuid5", "uuid6", "uuid7", "uuid8");
+        membershipRepository.reserveMembers(expired, actualDate);
+        expired.setDeactivateDate(actualDate);
+        membershipRepository.deactivateMembers(expired);
+
+        Map<String, String> actual = membershipRepository.reserveMembers(Arrays.asList(
+                team("team3", "uuid0", "uuid4", "uuid9", "uuid10"),
+                team("team4", "uuid5", "uuid6", "uuid11", "uuid12")), new Date(actualDate.getTime() + 1));
+
+        assertEquals(Collections.singletonMap("team3", "uuid4"), actual);
+        assertNull(membership("uuid0"));
+        assertEquals("team1", membership("uuid4").getTeamId());
+        assertEquals("team4", membership("uuid5").getTeamId());
+        assertEquals("team4", membership("uuid12").getTeamId());
+    }
+
+    @Test
+    public void releaseMembersRemovesOnlyMembershipsOfTeam() {
+        Date actualDate = new Date();
+        Team team = team("team1", "uuid1", "uuid2", "uuid3", "uuid4");
+        membershipRepository.reserveMembers(team, actualDate);
+        membershipRepository.reserveMembers(team("team2", "uuid5", "uuid6", "uuid7", "uuid8"), actualDate);
+
+        membershipRepository.releaseMembers(team);
+
+        assertEquals(4, mongoTemplate.count(null, membershipCollectionName));
+        assertNull(membership("uuid1"));
+    }
+
+    @Test
+    public void getActiveMembershipAndUsersInActiveTeamsReadOnlyActiveMemberships() {
+        Date actualDate = new Date();
+        membershipRepository.reserveMembers(team("team1", "uuid1", "uuid2", "uuid3", "uuid4"), actualDate);
+        Team expired = team("team2", "uuid5", "uuid6", "uuid7", "uuid8");
+        membershipRepository.reserveMembers(expired, actualDate);
+        expired.setDeactivateDate(actualDate);
+        membershipRepository.deactivateMembers(expired);
+
+        Membership actual = membershipRepository.getActiveMembership("uuid2", actualDate);
+
+        assertEquals("team1", actual.getTeamId());
+        assertNull(membershipRepository.getActiveMembership("uuid5", actualDate));
+        assertEquals(Arrays.asList("uuid1", "uuid4"), membershipRepository.getUsersInActiveTeams(
+                new HashSet<>(Arrays.asList("uuid4", "uuid1", "uuid5", "uuid9")), actualDate));
+    }
+
+    @Test
+    public void repairMembershipsReplacesMembershipsAsRead() {
+        Date actualDate = new Date();
+        membershipRepository.reserveMembers(team("team1", "uuid1", "uuid2", "uuid3", "uuid4"), actualDate);
+        Map<String, Membership> read = read(actualDate);
+        Team team = team("team2", "uuid4", "uuid5", "uuid6", "uuid7");
+
+        int actual = membershipRepository.repairMemberships(read, Arrays.asList(new Membership("uuid4", team),
+                new Membership("uuid5", team)), actualDate);
+
+        assertEquals(2, actual);
+        assertEquals(5, mongoTemplate.count(null, membershipCollectionName));
+        assertEquals("team2", membership("uuid4").getTeamId());
+        assertEquals(team.getDeactivateDate(), membership("uuid5").getDeactivateDate());
+    }
+
+    @Test
+    public void repairMembershipsIfMembershipsChangedAfterReadLeavesThem() {
+        Date actualDate = new Date();
+        Team team1 = team("team1", "uuid1", "uuid2", "uuid3", "uuid4");
+        membershipRepository.reserveMembers(team1, actualDate);
+        Map<String, Membership> read = read(actualDate);
+        membershipRepository.releaseMembers(team1);
+        membershipRepository.reserveMembers(team("team3", "uuid4", "uuid5", "uuid8", "uuid9"), actualDate);
+        Team team2 = team("team2", "uuid4", "uuid5", "uuid6", "uuid7");
+
+        int actual = membershipRepository.repairMemberships(read, Arrays.asList(new Membership("uuid4", team2),
+                new Membership("uuid5", team2), new Membership("uuid6", team2)), actualDate);
+
+        assertEquals(1, actual);
+        assertEquals("team3", membership("uuid4").getTeamId());
+        assertEquals("team3", membership("uuid5").getTeamId());
+        assertEquals("team2", membership("uuid6").getTeamId());
+    }
+
+    private Map<String, Membership> read(Date actualDate) {
+        return membershipRepository.getNotDeactivatedMemberships(actualDate).stream()
+                .collect(Collectors.toMap(Membership::getUuid, Function.identity()));
+    }
+
+    private Membership membership(String uuid) {
+        return mongoTemplate.findById(uuid, Membership.class, membershipCollectionName);
+    }
+
+    private static Team team(String id, String... members) {
+        Team team = new Team("uuid-from", new HashSet<>(Arrays.asList(members)));
+        team.setId(id);
+        return team;
+    }
+}
@@ -0,0 +1,81 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import com.mongodb.WriteConcern;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.data.mongodb.core.MongoAction;
+import org.springframework.data.mongodb.core.MongoActionOperation;
+import org.springframework.data.mongodb.core.WriteConcernResolver;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.com.juja.microservices.integration.BaseIntegrationTest;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ivan Shapovalov
+ */
+@RunWith(SpringRunner.class)
+@TestPropertySource(properties = {"teams.mongo.readPreference=secondaryPreferred",
+        "teams.mongo.readYourWritesMs=600000"})
+public class MongoTeamRepositoryReadPreferenceTest extends BaseIntegrationTest {
+
+    @Inject
+    private MongoTeamRepository teamRepository;
+
+    @After
+    public void tearDown() {
+        ReflectionTestUtils.setField(teamRepository, "lastWriteTime", 0L);
+    }
+
+    @Test
+    public void readsFromPrimaryOnlyDuringReadYourWritesWindow() {
+        ReflectionTestUtils.setField(teamRepository, "lastWriteTime", 0L);
+        assertFalse(teamRepository.readsFromPrimary());
+
+        Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        teamRepository.saveTeam(team);
+
+        assertTrue(teamRepository.readsFromPrimary());
+        List<Team> actual = teamRepository.getUserActiveTeams("uuid1", new Date());
+        assertEquals(1, actual.size());
+        assertEquals(team.getId(), actual.get(0).getId());
+    }
+
+    @Test
+    public void getUserActiveTeamsOutsideReadYourWritesWindowReadsSecondaryPreferred() {
+        Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid5", "uuid6", "uuid7", "uuid8")));
+        teamRepository.saveTeam(team);
+        ReflectionTestUtils.setField(teamRepository, "lastWriteTime", 0L);
+
+        List<Team> actual = teamRepository.getUserActiveTeams("uuid5", new Date());
+
+        assertFalse(teamRepository.readsFromPrimary());
+        assertEquals(1, actual.size());
+        assertEquals(team.getId(), actual.get(0).getId());
+    }
+
+    @Test
+    public void writeConcernResolverAppliesConcernToTeamsCollectionOnly() {
+        WriteConcernResolver resolver = MongoTeamRepository.writeConcernResolver("teams", WriteConcern.MAJORITY);
+
+        WriteConcern teams = resolver.resolve(new MongoAction(WriteConcern.ACKNOWLEDGED,
+                MongoActionOperation.SAVE, "teams", Team.class, null, null));
+        WriteConcern other = resolver.resolve(new MongoAction(WriteConcern.ACKNOWLEDGED,
+                MongoActionOperation.SAVE, "membership", Team.class, null, null));
+
+        assertEquals(WriteConcern.MAJORITY, teams);
+        assertEquals(WriteConcern.ACKNOWLEDGED, other);
+    }
+}
@@ -0,0 +1,365 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import com.lordofthejars.nosqlunit.annotation.UsingDataSet;
+import com.lordofthejars.nosqlunit.core.LoadStrategyEnum;
+import org.bson.types.ObjectId;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.com.juja.microservices.integration.BaseIntegrationTest;
+import ua.com.juja.microservices.teams.dao.impl.MongoTeamRepository.CheckStrategy;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import javax.inject.Inject;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ivan Shapovalov
+ * @author Andrii Sidun
+ */
+@RunWith(SpringRunner.class)
+public class MongoTeamRepositoryTest extends BaseIntegrationTest {
+
+    @Inject
+    private MongoTeamRepository teamRepository;
+
+    @Test
+    public void saveTeamExecutedCorrectly() {
+        final String uuidInOneTeam = "uuid-in-one-team";
+        final String uuidInSeveralTeams = "uuid-in-several-teams";
+        final Team expected =
+                new Team("uuid-from",new HashSet<>(Arrays.asList(uuidInOneTeam, "uuid1", "uuid2", uuidInSeveralTeams)));
+
+        Team actual = teamRepository.saveTeam(expected);
+
+        assertNotNull(actual);
+        assertThat(actual.getMembers(), is(expected.getMembers()));
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json")
+    public void getUserTeamsUserInOneTeamExecutedCorrectly() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        final String uuidInOneTeam = "uuid-in-one-team";
+        final String uuidInSeveralTeams = "uuid-in-several-teams";
+        final Team expected =
+                new Team("uuid-from",new HashSet<>(Arrays.asList(uuidInOneTeam, "uuid1", "uuid2", uuidInSeveralTeams)));
+
+        List<Team> actual = teamRepository.getUserActiveTeams(uuidInOneTeam, actualDate);
+
+        assertEquals(1, actual.size());
+        assertThat(actual.get(0).getMembers(), is(expected.getMembers()));
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void getUserTeamsIfUserInSeveralTeamsExecutedCorrectly() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        final String uuidInOneTeam = "uuid-in-one-team";
+        final String uuidInSeveralTeams = "uuid-in-several-teams";
+        final Team team1 =
+                new Team("uuid-from",new LinkedHashSet<>(Arrays.asList(uuidInOneTeam, "uuid1", "uuid2", uuidInSeveralTeams)));
+        final Team team2 =
+                new Team("uuid-from",new LinkedHashSet<>(Arrays.asList(uuidInSeveralTeams, "uuid3", "uuid4", "uuid5")));
+        final List<Team> expected = new ArrayList<>();
+        expected.add(team1);
+        expected.add(team2);
+
+        List<Team> actual = teamRepository.getUserActiveTeams(uuidInSeveralTeams, actualDate);
+
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < actual.size(); i++) {
+            assertThat(actual.get(i).getMembers(), is(expected.get(i).getMembers()));
+        }
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void getUserTeamsIfUserNotInTeamExecutedCorrectly() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        final String uuidNotInTeam = "uuid-not-in-team";
+
+        List<Team> actual = teamRepository.getUserActiveTeams(uuidNotInTeam, actualDate);
+
+        assertEquals(new ArrayList<>(), actual);
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void getUserTeamsIfUserInDeactivatedTeamsExecutedCorrectly() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        final String uuidInDeactivatedTeam = "uuid-in-deactivated-team";
+
+        List<Team> actual = teamRepository.getUserActiveTeams(uuidInDeactivatedTeam, actualDate);
+
+        assertEquals(new ArrayList<>(), actual);
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void deactivateTeamExecutedCorrectly() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        final String uuidInOneTeam = "uuid-in-one-team";
+        List<Team> teamsBefore = teamRepository.getUserActiveTeams(uuidInOneTeam, actualDate);
+        assertEquals(1, teamsBefore.size());
+        teamsBefore.get(0).setDeactivateDate(actualDate);
+        Date newDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+
+        teamRepository.saveTeam(teamsBefore.get(0));
+        List<Team> teamsAfter = teamRepository.getUserActiveTeams(uuidInOneTeam, newDate);
+
+        assertEquals(0, teamsAfter.size());
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void deactivateUserActiveTeamIfUserInOneTeamExecutedCorrectly() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        final String uuidInOneTeam = "uuid-in-one-team";
+
+        List<Team> actual = teamRepository.deactivateUserActiveTeam(uuidInOneTeam, actualDate);
+
+        assertEquals(1, actual.size());
+        assertEquals(actualDate, actual.get(0).getDeactivateDate());
+        assertEquals(0, teamRepository.getUserActiveTeams(uuidInOneTeam, actualDate).size());
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void deactivateUserActiveTeamIfUserInSeveralTeamsNotDeactivatesTeams() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        final String uuidInSeveralTeams = "uuid-in-several-teams";
+        String versionBefore = teamRepository.getVersion();
+
+        List<Team> actual = teamRepository.deactivateUserActiveTeam(uuidInSeveralTeams, actualDate);
+
+        assertEquals(2, actual.size());
+        assertEquals(2, teamRepository.getUserActiveTeams(uuidInSeveralTeams, actualDate).size());
+        assertEquals(versionBefore, teamRepository.getVersion());
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void deactivateUserActiveTeamIfUserNotInTeamReturnsEmptyList() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+
+        List<Team> actual = teamRepository.deactivateUserActiveTeam("uuid-in-deactivated-team", actualDate);
+
+        assertEquals(new ArrayList<>(), actual);
+    }
+
+    @Test
+    public void saveTeamChangesVersionAndGetTeamDoesNot() {
+        Team team = teamRepository.saveTeam(new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2"))));
+        String versionBefore = teamRepository.getVersion();
+
+        teamRepository.getTeam(team.getId());
+        assertEquals(versionBefore, teamRepository.getVersion());
+        teamRepository.saveTeam(new Team("uuid-from", new HashSet<>(Arrays.asList("uuid3", "uuid4"))));
+
+        assertNotEquals(versionBefore, teamRepository.getVersion());
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void insertTeamsInsertsAllTeams() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid11", "uuid12", "uuid13", "uuid14")));
+        team.setId(new ObjectId().toHexString());
+        Team another = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid15", "uuid16", "uuid17", "uuid18")));
+        another.setId(new ObjectId().toHexString());
+
+        List<Team> actual = teamRepository.insertTeams(Arrays.asList(team, another));
+
+        assertEquals(Arrays.asList(team, another), actual);
+        assertEquals(team.getId(), teamRepository.getUserActiveTeams("uuid11", actualDate).get(0).getId());
+        assertEquals(another.getId(), teamRepository.getUserActiveTeams("uuid18", actualDate).get(0).getId());
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void deactivateTeamsReturnsOnlyTeamsDeactivatedByCall() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        List<Team> teams = teamRepository.getUserActiveTeams("uuid-in-several-teams", actualDate);
+        assertEquals(2, teams.size());
+        teamRepository.deactivateUserActiveTeam("uuid3", actualDate);
+
+        List<Team> actual = teamRepository.deactivateTeams(teams, new Date(actualDate.getTime() + 1));
+
+        assertEquals(1, actual.size());
+        assertTrue(actual.get(0).getMembers().contains("uuid-in-one-team"));
+        assertEquals(0, teamRepository.getUserActiveTeams("uuid-in-several-teams", new Date(actualDate.getTime() + 1))
+                .size());
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json")
+    public void checkUsersActiveTeamsSomeUserInSeveralTeamsExecutedCorrectly() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        final String uuidInOneTeam = "uuid-in-one-team";
+        final String uuidInSeveralTeams = "uuid-in-several-teams";
+        Set<String> members = new HashSet<>();
+        members.add(uuidInOneTeam);
+        members.add(uuidInSeveralTeams);
+        final List<String> expected = new ArrayList<>();
+        expected.add(uuidInOneTeam);
+        expected.add(uuidInSeveralTeams);
+
+        List<String> actual = teamRepository.checkUsersActiveTeams(members, actualDate);
+
+        assertEquals(2, actual.size());
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json")
+    public void checkUsersActiveTeamsNoOneInSeveralTeamsReturnsEmptyList() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        final String uuidNotOneTeam = "uuid-not-in-team";
+        Set<String> members = new HashSet<>();
+        members.add(uuidNotOneTeam);
+        final List<String> expected = new ArrayList<>();
+
+        List<String> actual = teamRepository.checkUsersActiveTeams(members, actualDate);
+
+        assertEquals(0, actual.size());
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json")
+    public void checkUsersActiveTeamsWithFindStrategyReturnsSameUsersAsAggregation() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        Set<String> members = new HashSet<>(Arrays.asList("uuid-in-several-teams", "uuid-in-one-team",
+                "uuid-not-in-team", "uuid-in-deactivated-team"));
+        List<String> expected = teamRepository.checkUsersActiveTeams(members, actualDate);
+        ReflectionTestUtils.setField(teamRepository, "checkStrategy", CheckStrategy.FIND);
+
+        List<String> actual;
+        try {
+            actual = teamRepository.checkUsersActiveTeams(members, actualDate);
+        } finally {
+            ReflectionTestUtils.setField(teamRepository, "checkStrategy", CheckStrategy.AGGREGATION);
+        }
+
+        assertEquals(Arrays.asList("uuid-in-one-team", "uuid-in-several-teams"), actual);
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json")
+    public void getAllActiveTeamsIfMongoTemplateReturnsNotNullTeamExecutedCorrectly() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        final Team team1 = new Team("uuid-from",new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        final Team team2 = new Team("uuid-from",new HashSet<>(Arrays.asList("uuid5", "uuid6", "uuid7", "uuid8")));
+        final List<Team> expected = Arrays.asList(team1, team2);
+
+        List<Team> actual = teamRepository.getAllActiveTeams(actualDate);
+
+        assertEquals(2, actual.size());
+        for (int i = 0; i < actual.size(); i++) {
+            assertThat(actual.get(i).getMembers(), is(expected.get(i).getMembers()));
+        }
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void streamAllActiveTeamsPassesSameTeamsAsGetAllActiveTeams() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        List<Team> expected = teamRepository.getAllActiveTeams(actualDate);
+        List<Team> actual = new ArrayList<>();
+
+        long count = teamRepository.streamAllActiveTeams(actualDate, actual::add);
+
+        assertEquals(2, count);
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void getActiveTeamsPageWalksActiveTeamsInOrderOfIds() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+
+        List<Team> firstPage = teamRepository.getActiveTeamsPage(actualDate, null, 1);
+        List<Team> secondPage = teamRepository.getActiveTeamsPage(actualDate, firstPage.get(0).getId(), 1);
+        List<Team> lastPage = teamRepository.getActiveTeamsPage(actualDate, secondPage.get(0).getId(), 1);
+
+        assertEquals(1, firstPage.size());
+        assertEquals(1, secondPage.size());
+        assertTrue(firstPage.get(0).getId().compareTo(secondPage.get(0).getId()) < 0);
+        assertEquals(new ArrayList<>(), lastPage);
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAndDeactivateDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void getUsersActiveTeamsReturnsActiveTeamsOfAllUsers() {
+        Date actualDate = Date.from(LocalDateTime.now().atZone(ZoneId.systemDefault()).toInstant());
+        Set<String> uuids = new HashSet<>(Arrays.asList("uuid-in-one-team", "uuid-in-several-teams",
+                "uuid-in-deactivated-team", "uuid-not-in-team"));
+
+        List<Team> actual = teamRepository.getUsersActiveTeams(uuids, actualDate);
+
+        assertEquals(2, actual.size());
+        assertTrue(actual.stream().allMatch(team -> team.getMembers().contains("uuid-in-several-teams")));
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void archiveTeamsMovesOneBatchOfTeamsDeactivatedBeforeDate() {
+        Date deactivatedBefore = Date.from(LocalDateTime.of(2017, 5, 1, 0, 0).atZone(ZoneId.systemDefault()).toInstant());
+        Date oldDate = Date.from(LocalDateTime.of(2017, 4, 10, 0, 0).atZone(ZoneId.systemDefault()).toInstant());
+
+        int first = teamRepository.archiveTeams(deactivatedBefore, 1);
+        int second = teamRepository.archiveTeams(deactivatedBefore, 1);
+        int third = teamRepository.archiveTeams(deactivatedBefore, 1);
+
+        assertEquals(1, first);
+        assertEquals(1, second);
+        assertEquals(0, third);
+        assertEquals(3, teamRepository.getNotDeactivatedTeams(oldDate).size());
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void getTeamsActiveBetweenReturnsTeamsActiveAtAnyMomentOfPeriod() {
+        Date from = Date.from(LocalDateTime.of(2017, 4, 20, 0, 0).atZone(ZoneId.systemDefault()).toInstant());
+        Date to = Date.from(LocalDateTime.of(2017, 5, 10, 0, 0).atZone(ZoneId.systemDefault()).toInstant());
+
+        List<Team> allTeams = teamRepository.getTeamsActiveBetween(null, from, to);
+        List<Team> userTeams = teamRepository.getTeamsActiveBetween("uuid-in-deactivated-team", from, to);
+
+        assertEquals(4, allTeams.size());
+        assertEquals(2, userTeams.size());
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void getUserTeamsTimelineWalksAllUserTeamsInOrderOfActivateDateAndId() {
+        List<Team> firstPage = teamRepository.getUserTeamsTimeline("uuid7", null, null, 2);
+        Team last = firstPage.get(1);
+        List<Team> secondPage = teamRepository.getUserTeamsTimeline("uuid7", last.getActivateDate(), last.getId(), 2);
+
+        assertEquals(2, firstPage.size());
+        assertEquals(1, secondPage.size());
+        assertTrue(firstPage.get(0).getId().compareTo(last.getId()) < 0);
+        assertTrue(last.getId().compareTo(secondPage.get(0).getId()) < 0);
+        assertEquals(null, secondPage.get(0).getFrom());
+        assertTrue(secondPage.get(0).getMembers().contains("uuid7"));
+    }
+}
@@ -0,0 +1,67 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.com.juja.microservices.integration.BaseIntegrationTest;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ivan Shapovalov
+ */
+@RunWith(SpringRunner.class)
+@TestPropertySource(properties = {"teams.mongo.writeBehind.enabled=true", "teams.mongo.writeBehind.batchSize=10",
+        "teams.mongo.writeBehind.flushMs=50"})
+public class MongoTeamRepositoryWriteBehindTest extends BaseIntegrationTest {
+
+    @Inject
+    private MongoTeamRepository teamRepository;
+
+    @Test
+    public void saveTeamReturnsAfterTeamIsWritten() {
+        Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2")));
+
+        Team actual = teamRepository.saveTeam(team);
+
+        assertNotNull(actual.getId());
+        List<Team> teams = teamRepository.getUserActiveTeams("uuid1", new Date());
+        assertEquals(1, teams.size());
+        assertEquals(team.getId(), teams.get(0).getId());
+    }
+
+    @Test
+    public void concurrentSaveTeamsAreWrittenInBatches() {
+        TeamWriteBehind writeBehind = (TeamWriteBehind) ReflectionTestUtils.getField(teamRepository, "writeBehind");
+        long batchesBefore = writeBehind.getBatches();
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+
+        List<CompletableFuture<Team>> saves = IntStream.range(0, 20)
+                .mapToObj(index -> CompletableFuture.supplyAsync(() -> teamRepository.saveTeam(
+                        new Team("uuid-from", new HashSet<>(Arrays.asList("uuid-batch" + index)))), executor))
+                .collect(Collectors.toList());
+        saves.forEach(CompletableFuture::join);
+        executor.shutdown();
+
+        Date actualDate = new Date();
+        IntStream.range(0, 20).forEach(index ->
+                assertEquals(1, teamRepository.getUserActiveTeams("uuid-batch" + index, actualDate).size()));
+        assertTrue(writeBehind.getBatches() - batchesBefore < 20);
+    }
+}
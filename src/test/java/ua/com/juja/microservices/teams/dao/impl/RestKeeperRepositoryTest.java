@@ -9,15 +9,23 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
 import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.web.client.ExpectedCount;
 import org.springframework.test.web.client.MockRestServiceServer;
 import org.springframework.web.client.RestTemplate;
 import ua.com.juja.microservices.teams.dao.KeeperRepository;
+import ua.com.juja.microservices.teams.entity.Keeper;
 import ua.com.juja.microservices.teams.exceptions.KeeperExchangeException;
+import ua.com.juja.microservices.teams.exceptions.KeeperServiceUnavailableException;
+import ua.com.juja.microservices.teams.service.KeeperService;
 
 import javax.inject.Inject;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.hamcrest.CoreMatchers.containsString;
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -25,6 +33,7 @@ import static org.hamcrest.MatcherAssert.assertThat;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withBadRequest;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 
 /**
@@ -32,6 +41,9 @@ import static org.springframework.test.web.client.response.MockRestResponseCreat
  */
 @RunWith(SpringRunner.class)
 @SpringBootTest
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+@TestPropertySource(properties = {"keepers.preload.enabled=false", "teams.indexes.enabled=false",
+        "teams.activeIndex.enabled=false", "keepers.cache.ttlSeconds=2", "keepers.cache.refreshSeconds=1"})
 public class RestKeeperRepositoryTest {
 
     @Rule
@@ -39,15 +51,26 @@ public class RestKeeperRepositoryTest {
     @Inject
     private KeeperRepository keeperRepository;
     @Inject
+    private KeeperService keeperService;
+    @Inject
     private RestTemplate restTemplate;
     private MockRestServiceServer mockServer;
 
     @Value("${keepers.endpoint.getDirections}")
     private String keepersGetDirectionsUrl;
 
+    @Value("${keepers.endpoint.getDirectionKeepers}")
+    private String keepersGetDirectionKeepersUrl;
+
     @Value("${keepers.direction.teams}")
     private String teamsDirection;
 
+    @Value("${keepers.cache.ttlSeconds}")
+    private long cacheTtlSeconds;
+
+    @Value("${keepers.circuitBreaker.minimumNumberOfCalls}")
+    private int circuitBreakerMinimumNumberOfCalls;
+
     @Before
     public void setup() {
         mockServer = MockRestServiceServer.bindTo(restTemplate).build();
@@ -80,4 +103,107 @@ public class RestKeeperRepositoryTest {
 
         keeperRepository.getDirections(uuid);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getDirectionKeepersExecutedCorrectly() {
+        mockServer.expect(requestTo(keepersGetDirectionKeepersUrl + "/" + teamsDirection))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess(
+                        "[{\"uuid\":\"uuid1\",\"directions\":[\"" + teamsDirection + "\"]}," +
+                                "{\"uuid\":\"uuid2\",\"directions\":[\"" + teamsDirection + "\",\"keepers\"]}]",
+                        MediaType.APPLICATION_JSON));
+
+        List<Keeper> actual = keeperRepository.getDirectionKeepers(teamsDirection);
+
+        assertThat(actual.size(), equalTo(2));
+        assertThat(actual.get(0).getUuid(), equalTo("uuid1"));
+        assertThat(actual.get(0).getDirections(), equalTo(Collections.singletonList(teamsDirection)));
+        assertThat(actual.get(1).getUuid(), equalTo("uuid2"));
+        assertThat(actual.get(1).getDirections(), equalTo(Arrays.asList(teamsDirection, "keepers")));
+    }
+
+    @Test
+    public void getDirectionKeepersIfKeepersServiceUnavailableThrowsException() {
+        mockServer.expect(requestTo(keepersGetDirectionKeepersUrl + "/" + teamsDirection))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withServerError());
+
+        expectedException.expect(KeeperServiceUnavailableException.class);
+        expectedException.expectMessage(containsString("Keepers service is unavailable"));
+
+        keeperRepository.getDirectionKeepers(teamsDirection);
+    }
+
+    @Test
+    public void getDirectionsIfKeepersServiceUnavailableReturnsLastKnownDirections() {
+        String uuid = "uuid";
+        mockServer.expect(requestTo(keepersGetDirectionsUrl + "/" + uuid))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess("[\"" + teamsDirection + "\"]", MediaType.APPLICATION_JSON));
+        mockServer.expect(requestTo(keepersGetDirectionsUrl + "/" + uuid))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withServerError());
+        List<String> expected = Collections.singletonList(teamsDirection);
+
+        keeperRepository.getDirections(uuid);
+        List<String> actual = keeperRepository.getDirections(uuid);
+
+        assertThat(actual, equalTo(expected));
+        mockServer.verify();
+    }
+
+    @Test
+    public void getDirectionsIfCachedDirectionsExpiredAndKeepersServiceUnavailableReturnsLastKnownDirections()
+            throws InterruptedException {
+        String uuid = "uuid";
+        mockServer.expect(requestTo(keepersGetDirectionsUrl + "/" + uuid))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess("[\"" + teamsDirection + "\"]", MediaType.APPLICATION_JSON));
+        mockServer.expect(requestTo(keepersGetDirectionsUrl + "/" + uuid))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withServerError());
+        List<String> expected = Collections.singletonList(teamsDirection);
+
+        keeperService.getDirections(uuid);
+        Thread.sleep(TimeUnit.SECONDS.toMillis(cacheTtlSeconds) + 100);
+        List<String> actual = keeperService.getDirections(uuid);
+
+        assertThat(actual, equalTo(expected));
+        mockServer.verify();
+    }
+
+    @Test
+    public void getDirectionsIfKeepersServiceUnavailableThrowsException() {
+        String uuid = "uuid-unknown";
+        mockServer.expect(requestTo(keepersGetDirectionsUrl + "/" + uuid))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withServerError());
+
+        expectedException.expect(KeeperServiceUnavailableException.class);
+        expectedException.expectMessage(containsString("Keepers service is unavailable"));
+
+        keeperRepository.getDirections(uuid);
+    }
+
+    @Test
+    public void getDirectionsIfCircuitBreakerOpenFailsWithoutRequest() {
+        String uuid = "uuid-unknown";
+        mockServer.expect(ExpectedCount.times(circuitBreakerMinimumNumberOfCalls),
+                requestTo(keepersGetDirectionsUrl + "/" + uuid))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withServerError());
+        for (int i = 0; i < circuitBreakerMinimumNumberOfCalls; i++) {
+            try {
+                keeperRepository.getDirections(uuid);
+            } catch (KeeperServiceUnavailableException ex) {
+                // keepers service fails, circuit breaker counts the failure
+            }
+        }
+        mockServer.verify();
+
+        expectedException.expect(KeeperServiceUnavailableException.class);
+        expectedException.expectMessage(containsString("CircuitBreaker 'keepers' is OPEN"));
+
+        keeperRepository.getDirections(uuid);
+    }
+}
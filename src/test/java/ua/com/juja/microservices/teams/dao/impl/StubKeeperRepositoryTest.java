@@ -0,0 +1,53 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import ua.com.juja.microservices.teams.dao.KeeperRepository;
+import ua.com.juja.microservices.teams.entity.Keeper;
+
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author Ivan Shapovalov
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = StubKeeperRepository.class)
+@ActiveProfiles("local")
+@TestPropertySource(properties = {"keepers.stub.teamsKeepers=uuid1,uuid2", "keepers.direction.teams=teams"})
+public class StubKeeperRepositoryTest {
+
+    @Inject
+    private KeeperRepository keeperRepository;
+
+    @Test
+    public void getDirectionsOfStubKeeperReturnsTeamsDirection() {
+        List<String> actual = keeperRepository.getDirections("uuid1");
+
+        assertThat(actual, equalTo(Collections.singletonList("teams")));
+    }
+
+    @Test
+    public void getDirectionsOfNotKeeperReturnsEmptyList() {
+        List<String> actual = keeperRepository.getDirections("uuid-not-keeper");
+
+        assertThat(actual, equalTo(Collections.emptyList()));
+    }
+
+    @Test
+    public void getDirectionKeepersReturnsAllStubKeepers() {
+        List<Keeper> actual = keeperRepository.getDirectionKeepers("teams");
+
+        assertThat(actual.size(), equalTo(2));
+        assertThat(actual.get(0).getUuid(), equalTo("uuid1"));
+        assertThat(actual.get(1).getUuid(), equalTo("uuid2"));
+    }
+}
@@ -0,0 +1,66 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.DBObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.test.context.junit4.SpringRunner;
+import ua.com.juja.microservices.integration.BaseIntegrationTest;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ivan Shapovalov
+ */
+@RunWith(SpringRunner.class)
+public class TeamIndexManagerTest extends BaseIntegrationTest {
+
+    @Inject
+    private TeamIndexManager teamIndexManager;
+
+    @Inject
+    private MongoTemplate mongoTemplate;
+
+    @Value("${spring.data.mongodb.collection}")
+    private String mongoCollectionName;
+
+    @Test
+    public void ensureIndexesCreatesCompoundIndexes() {
+        teamIndexManager.ensureIndexes();
+
+        List<String> indexes = mongoTemplate.indexOps(mongoCollectionName).getIndexInfo().stream()
+                .map(IndexInfo::getName)
+                .collect(Collectors.toList());
+        assertTrue(indexes.contains("members_1_deactivateDate_1_activateDate_1"));
+        assertTrue(indexes.contains("deactivateDate_1_activateDate_1"));
+    }
+
+    @Test
+    public void isCollectionScanIfPlanHasCollectionScanStageReturnsTrue() {
+        DBObject plan = new BasicDBObject("stage", "FETCH")
+                .append("inputStage", new BasicDBObject("stage", "OR")
+                        .append("inputStages", Arrays.asList(
+                                new BasicDBObject("stage", "IXSCAN"),
+                                new BasicDBObject("stage", TeamIndexManager.COLLECTION_SCAN))));
+
+        assertTrue(TeamIndexManager.isCollectionScan(plan));
+    }
+
+    @Test
+    public void isCollectionScanIfPlanUsesIndexReturnsFalse() {
+        DBObject plan = new BasicDBObject("stage", "FETCH")
+                .append("inputStage", new BasicDBObject("stage", "IXSCAN")
+                        .append("indexName", "members_1_deactivateDate_1_activateDate_1"));
+
+        assertFalse(TeamIndexManager.isCollectionScan(plan));
+    }
+}
@@ -0,0 +1,140 @@
+package ua.com.juja.microservices.teams.dao.impl;
+
+import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteException;
+import com.mongodb.BulkWriteOperation;
+import com.mongodb.WriteConcernError;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ivan Shapovalov
+ */
+public class TeamWriteBehindTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class, RETURNS_DEEP_STUBS);
+    private final BulkWriteOperation bulk = mock(BulkWriteOperation.class, RETURNS_DEEP_STUBS);
+    private final MongoCommandMetrics commandMetrics = new MongoCommandMetrics();
+    private TeamWriteBehind writeBehind;
+
+    @Before
+    public void setup() {
+        when(mongoTemplate.getCollection("teams").initializeUnorderedBulkOperation()).thenReturn(bulk);
+        writeBehind = new TeamWriteBehind(mongoTemplate, "teams", null, commandMetrics, 10, 1, 10, 50, () -> { });
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        writeBehind.shutdown();
+        commandMetrics.shutdown();
+    }
+
+    @Test
+    public void saveIfBatchFailsWriteConcernCompletesSaveExceptionally() throws Exception {
+        BulkWriteException writeConcernFailure = mock(BulkWriteException.class);
+        when(writeConcernFailure.getWriteErrors()).thenReturn(Collections.emptyList());
+        when(writeConcernFailure.getWriteConcernError())
+                .thenReturn(new WriteConcernError(64, "waiting for replication timed out", new BasicDBObject()));
+        when(bulk.execute()).thenThrow(writeConcernFailure);
+
+        CompletableFuture<Team> saved = writeBehind.save(team());
+
+        try {
+            saved.get(10, TimeUnit.SECONDS);
+            fail("Save must fail when write concern is not satisfied");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause().getMessage().contains("waiting for replication timed out"));
+        }
+    }
+
+    @Test
+    public void awaitIfSaveIsNotTakenInTimeoutCancelsIt() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch written = new CountDownLatch(1);
+        when(bulk.execute()).thenAnswer(invocation -> {
+            started.countDown();
+            written.await(10, TimeUnit.SECONDS);
+            return null;
+        });
+        TeamWriteBehind.PendingSave first = writeBehind.save(team());
+        started.await(10, TimeUnit.SECONDS);
+        TeamWriteBehind.PendingSave second = writeBehind.save(team());
+
+        try {
+            writeBehind.await(second, 50);
+            fail("Save must fail when it is not taken into batch in timeout");
+        } catch (TimeoutException ex) {
+            written.countDown();
+        }
+
+        first.get(10, TimeUnit.SECONDS);
+        writeBehind.shutdown();
+        assertTrue(second.isCancelled());
+        assertEquals(1, writeBehind.getBatches());
+        verify(bulk, times(1)).execute();
+    }
+
+    @Test
+    public void awaitIfSaveIsTakenWaitsForItsBatch() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        when(bulk.execute()).thenAnswer(invocation -> {
+            started.countDown();
+            Thread.sleep(200);
+            return null;
+        });
+        Team team = team();
+        TeamWriteBehind.PendingSave saved = writeBehind.save(team);
+        started.await(10, TimeUnit.SECONDS);
+
+        Team actual = writeBehind.await(saved, 50);
+
+        assertSame(team, actual);
+    }
+
+    @Test
+    public void saveIfAfterBatchFailsCompletesSave() throws Exception {
+        writeBehind.shutdown();
+        writeBehind = new TeamWriteBehind(mongoTemplate, "teams", null, commandMetrics, 10, 1, 10, 50, () -> {
+            throw new IllegalStateException("Version is not incremented");
+        });
+        Team team = team();
+
+        Team actual = writeBehind.await(writeBehind.save(team), 10000);
+
+        assertSame(team, actual);
+    }
+
+    @Test
+    public void saveAfterShutdownIsRejected() throws InterruptedException {
+        writeBehind.shutdown();
+
+        assertNull(writeBehind.save(team()));
+    }
+
+    private static Team team() {
+        return new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2")));
+    }
+}
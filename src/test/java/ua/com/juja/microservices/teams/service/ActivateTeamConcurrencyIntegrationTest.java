@@ -0,0 +1,116 @@
+package ua.com.juja.microservices.teams.service;
+
+import com.lordofthejars.nosqlunit.annotation.UsingDataSet;
+import com.lordofthejars.nosqlunit.core.LoadStrategyEnum;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.junit4.SpringRunner;
+import ua.com.juja.microservices.integration.BaseIntegrationTest;
+import ua.com.juja.microservices.teams.dao.KeeperRepository;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.entity.Team;
+import ua.com.juja.microservices.teams.entity.impl.ActivateTeamRequest;
+import ua.com.juja.microservices.teams.exceptions.UserAlreadyInTeamException;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Activates thousands of teams with random common members concurrently and checks that no user gets
+ * into two active teams. Users are checked with find, as aggregation of in-memory Mongo is too slow
+ * for thousands of calls.
+ *
+ * @author Ivan Shapovalov
+ */
+@RunWith(SpringRunner.class)
+@TestPropertySource(properties = "teams.checkUsersActiveTeams.strategy=FIND")
+public class ActivateTeamConcurrencyIntegrationTest extends BaseIntegrationTest {
+    private static final int ACTIVATIONS = 2_000;
+    private static final int THREADS = 32;
+    private static final int USERS = 200;
+    private static final String FROM = "uuid-from";
+
+    @Inject
+    private TeamService teamService;
+
+    @Inject
+    private TeamRepository teamRepository;
+
+    @MockBean
+    private KeeperRepository keeperRepository;
+
+    @Value("${keepers.direction.teams}")
+    private String teamsDirection;
+
+    @Test
+    @UsingDataSet(loadStrategy = LoadStrategyEnum.DELETE_ALL)
+    public void activateTeamsConcurrentlyNoUserInSeveralTeams() throws Exception {
+        when(keeperRepository.getDirections(FROM)).thenReturn(Collections.singletonList(teamsDirection));
+        Random random = new Random(ACTIVATIONS);
+        List<ActivateTeamRequest> requests = IntStream.range(0, ACTIVATIONS)
+                .mapToObj(i -> new ActivateTeamRequest(FROM, randomMembers(random)))
+                .collect(Collectors.toList());
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Team>> results = new ArrayList<>();
+
+        for (ActivateTeamRequest request : requests) {
+            results.add(executor.submit(() -> {
+                start.await();
+                try {
+                    return teamService.activateTeam(request);
+                } catch (UserAlreadyInTeamException ex) {
+                    return null;
+                }
+            }));
+        }
+        start.countDown();
+        int activated = 0;
+        for (Future<Team> result : results) {
+            if (result.get(60, TimeUnit.SECONDS) != null) {
+                activated++;
+            }
+        }
+        executor.shutdown();
+
+        Set<String> users = IntStream.range(0, USERS).mapToObj(i -> "uuid" + i).collect(Collectors.toSet());
+        List<Team> activeTeams = teamRepository.getUsersActiveTeams(users, new Date());
+        Map<String, Integer> userTeams = new HashMap<>();
+        activeTeams.forEach(team -> team.getMembers().forEach(member -> userTeams.merge(member, 1, Integer::sum)));
+        assertTrue(activated > 0);
+        assertEquals(activated, activeTeams.size());
+        assertEquals(Collections.emptyMap(), userTeams.entrySet().stream()
+                .filter(entry -> entry.getValue() > 1)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue)));
+    }
+
+    private static Set<String> randomMembers(Random random) {
+        Set<String> members = new HashSet<>();
+        while (members.size() < 4) {
+            members.add("uuid" + random.nextInt(USERS));
+        }
+        return members;
+    }
+}
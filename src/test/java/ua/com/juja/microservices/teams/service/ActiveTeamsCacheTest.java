@@ -0,0 +1,99 @@
+package ua.com.juja.microservices.teams.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.dao.TeamSavedEvent;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ivan Shapovalov
+ */
+public class ActiveTeamsCacheTest {
+    private final TeamService teamService = mock(TeamService.class);
+    private final TeamRepository teamRepository = mock(TeamRepository.class);
+    private final TeamsVersion teamsVersion = new TeamsVersion();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ActiveTeamsCache activeTeamsCache = new ActiveTeamsCache();
+    private final Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2")));
+
+    @Before
+    public void setup() {
+        ReflectionTestUtils.setField(teamsVersion, "teamRepository", teamRepository);
+        ReflectionTestUtils.setField(teamsVersion, "activeTeamsIndex", mock(ActiveTeamsIndex.class));
+        ReflectionTestUtils.setField(teamsVersion, "checkMs", 0L);
+        when(teamRepository.getVersion()).thenReturn("1-1");
+        ReflectionTestUtils.setField(activeTeamsCache, "teamService", teamService);
+        ReflectionTestUtils.setField(activeTeamsCache, "teamsVersion", teamsVersion);
+        ReflectionTestUtils.setField(activeTeamsCache, "objectMapper", objectMapper);
+        ReflectionTestUtils.setField(activeTeamsCache, "cacheEnabled", true);
+        ReflectionTestUtils.setField(activeTeamsCache, "zoneId", "");
+        activeTeamsCache.init();
+        when(teamService.getAllActiveTeams()).thenReturn(Collections.singletonList(team));
+    }
+
+    @Test
+    public void getAllActiveTeamsLoadsTeamsOnceAndKeepsJson() throws Exception {
+        ActiveTeamsCache.Entry first = activeTeamsCache.getAllActiveTeams();
+        ActiveTeamsCache.Entry second = activeTeamsCache.getAllActiveTeams();
+
+        assertSame(first, second);
+        verify(teamService, times(1)).getAllActiveTeams();
+        assertEquals(objectMapper.writeValueAsString(Collections.singletonList(team)),
+                new String(first.getJson(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void onTeamSavedInvalidatesEntry() {
+        activeTeamsCache.getAllActiveTeams();
+        Team saved = new Team("uuid-from", new HashSet<>(Collections.singletonList("uuid3")));
+        List<Team> teams = Arrays.asList(team, saved);
+        when(teamService.getAllActiveTeams()).thenReturn(teams);
+
+        activeTeamsCache.onTeamSaved(new TeamSavedEvent(saved));
+
+        assertEquals(teams, activeTeamsCache.getAllActiveTeams().getTeams());
+        verify(teamService, times(2)).getAllActiveTeams();
+    }
+
+    @Test
+    public void getAllActiveTeamsIfTeamsVersionChangedLoadsTeamsSavedByAnotherInstance() {
+        activeTeamsCache.getAllActiveTeams();
+        Team saved = new Team("uuid-from", new HashSet<>(Collections.singletonList("uuid3")));
+        List<Team> teams = Arrays.asList(team, saved);
+        when(teamService.getAllActiveTeams()).thenReturn(teams);
+
+        when(teamRepository.getVersion()).thenReturn("1-2");
+        ActiveTeamsCache.Entry actual = activeTeamsCache.getAllActiveTeams();
+
+        assertEquals(teams, actual.getTeams());
+        assertEquals("\"1-2-" + ReflectionTestUtils.getField(teamsVersion, "dayStart") + "\"", actual.getVersion());
+        assertSame(actual, activeTeamsCache.getAllActiveTeams());
+    }
+
+    @Test
+    public void getAllActiveTeamsIfDayPassedReloadsTeams() {
+        ActiveTeamsCache.Entry entry = activeTeamsCache.getAllActiveTeams();
+        ReflectionTestUtils.setField(activeTeamsCache, "entry", new ActiveTeamsCache.Entry(
+                entry.getDay().minusDays(1), entry.getVersion(), entry.getTeams(), entry.getJson()));
+
+        activeTeamsCache.getAllActiveTeams();
+
+        verify(teamService, times(2)).getAllActiveTeams();
+    }
+}
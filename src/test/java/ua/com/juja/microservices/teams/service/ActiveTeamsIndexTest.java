@@ -0,0 +1,151 @@
+package ua.com.juja.microservices.teams.service;
+
+import com.lordofthejars.nosqlunit.annotation.UsingDataSet;
+import com.lordofthejars.nosqlunit.core.LoadStrategyEnum;
+import com.mongodb.BasicDBObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.com.juja.microservices.integration.BaseIntegrationTest;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Ivan Shapovalov
+ */
+@RunWith(SpringRunner.class)
+@DirtiesContext
+public class ActiveTeamsIndexTest extends BaseIntegrationTest {
+
+    @Inject
+    private ActiveTeamsIndex activeTeamsIndex;
+
+    @Inject
+    private TeamRepository teamRepository;
+
+    @Inject
+    private TeamsVersion teamsVersion;
+
+    @Inject
+    private MongoTemplate mongoTemplate;
+
+    @Value("${spring.data.mongodb.collection}")
+    private String mongoCollectionName;
+
+    @Value("${spring.data.mongodb.versionCollection}")
+    private String versionCollectionName;
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void rebuildLoadsActiveTeamsFromDB() {
+        Date actualDate = new Date();
+
+        activeTeamsIndex.rebuild();
+
+        assertEquals(2, activeTeamsIndex.getAllActiveTeams(actualDate).size());
+        assertEquals(1, activeTeamsIndex.getUserActiveTeams("uuid7", actualDate).size());
+        assertEquals(Collections.emptyList(), activeTeamsIndex.getUserActiveTeams("uuid-in-one-team", actualDate));
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void saveTeamUpdatesIndex() {
+        activeTeamsIndex.rebuild();
+        Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid11", "uuid12", "uuid13", "uuid14")));
+
+        teamRepository.saveTeam(team);
+        List<Team> afterActivate = activeTeamsIndex.getUserActiveTeams("uuid11", new Date());
+        team.setDeactivateDate(new Date());
+        teamRepository.saveTeam(team);
+        List<Team> afterDeactivate = activeTeamsIndex.getUserActiveTeams("uuid11", new Date());
+
+        assertEquals(1, afterActivate.size());
+        assertEquals(team.getId(), afterActivate.get(0).getId());
+        assertEquals(Collections.emptyList(), afterDeactivate);
+        assertEquals(2, activeTeamsIndex.getAllActiveTeams(new Date()).size());
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void getAllActiveTeamsAfterDeactivateDatePassedExcludesTeam() throws Exception {
+        activeTeamsIndex.rebuild();
+        Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid11", "uuid12", "uuid13", "uuid14")));
+        team.setDeactivateDate(new Date(System.currentTimeMillis() + 200));
+        teamRepository.saveTeam(team);
+        assertEquals(3, activeTeamsIndex.getAllActiveTeams(new Date()).size());
+
+        Thread.sleep(300);
+
+        assertEquals(2, activeTeamsIndex.getAllActiveTeams(new Date()).size());
+        assertEquals(Collections.emptyList(), activeTeamsIndex.getUserActiveTeams("uuid11", new Date()));
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void checkConsistencyIfTeamSavedBypassingIndexRebuildsIndex() {
+        activeTeamsIndex.rebuild();
+        Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid11", "uuid12", "uuid13", "uuid14")));
+        mongoTemplate.save(team, mongoCollectionName);
+
+        Set<String> differences = activeTeamsIndex.checkConsistency();
+
+        assertEquals(Collections.singleton(team.getId()), differences);
+        Set<String> activeTeams = activeTeamsIndex.getAllActiveTeams(new Date()).stream()
+                .map(Team::getId)
+                .collect(Collectors.toSet());
+        assertTrue(activeTeams.contains(team.getId()));
+        assertEquals(Collections.emptySet(), activeTeamsIndex.checkConsistency());
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void getETagIfTeamSavedByAnotherInstanceRebuildsIndexBeforeETagChanges() {
+        activeTeamsIndex.rebuild();
+        ReflectionTestUtils.setField(teamsVersion, "checkMs", 0L);
+        String eTagBefore = teamsVersion.getETag();
+        Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid11", "uuid12", "uuid13", "uuid14")));
+        mongoTemplate.save(team, mongoCollectionName);
+        mongoTemplate.getCollection(versionCollectionName).update(new BasicDBObject("_id", "teams"),
+                new BasicDBObject("$inc", new BasicDBObject("version", 1L))
+                        .append("$setOnInsert", new BasicDBObject("created", new Date())), true, false);
+
+        String actual = teamsVersion.getETag();
+
+        assertNotEquals(eTagBefore, actual);
+        assertTrue(activeTeamsIndex.getAllActiveTeams(new Date()).stream()
+                .anyMatch(activeTeam -> activeTeam.getId().equals(team.getId())));
+        assertEquals(actual, teamsVersion.getETag());
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void getActiveTeamsPageReturnsSamePagesAsRepository() {
+        Date actualDate = new Date();
+        activeTeamsIndex.rebuild();
+
+        List<Team> firstPage = activeTeamsIndex.getActiveTeamsPage(actualDate, null, 1);
+        String afterId = firstPage.get(0).getId();
+        List<Team> secondPage = activeTeamsIndex.getActiveTeamsPage(actualDate, afterId, 5);
+
+        assertEquals(teamRepository.getActiveTeamsPage(actualDate, null, 1), firstPage);
+        assertEquals(teamRepository.getActiveTeamsPage(actualDate, afterId, 5), secondPage);
+        assertEquals(1, secondPage.size());
+    }
+}
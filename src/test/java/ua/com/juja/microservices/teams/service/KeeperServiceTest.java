@@ -0,0 +1,186 @@
+package ua.com.juja.microservices.teams.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import ua.com.juja.microservices.teams.dao.KeeperRepository;
+import ua.com.juja.microservices.teams.entity.Keeper;
+import ua.com.juja.microservices.teams.exceptions.KeeperExchangeException;
+import ua.com.juja.microservices.teams.exceptions.KeeperServiceUnavailableException;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ivan Shapovalov
+ */
+@RunWith(SpringRunner.class)
+@WebMvcTest(KeeperService.class)
+public class KeeperServiceTest {
+
+    @Inject
+    private KeeperService keeperService;
+
+    @MockBean
+    private KeeperRepository keeperRepository;
+
+    @Value("${keepers.direction.teams}")
+    private String teamsDirection;
+
+    @Before
+    public void setup() {
+        // forget preload made on context startup
+        reset(keeperRepository);
+    }
+
+    @Test
+    public void getDirectionsTwiceRequestsKeepersOnce() {
+        String uuid = "uuid-cached-keeper";
+        List<String> expected = Arrays.asList("teams", "keepers");
+        when(keeperRepository.getDirections(uuid)).thenReturn(expected);
+
+        List<String> first = keeperService.getDirections(uuid);
+        List<String> second = keeperService.getDirections(uuid);
+
+        assertEquals(expected, first);
+        assertEquals(expected, second);
+        verify(keeperRepository).getDirections(uuid);
+        verifyNoMoreInteractions(keeperRepository);
+    }
+
+    @Test
+    public void getDirectionsIfKeepersReturnNullReturnsEmptyList() {
+        String uuid = "uuid-not-keeper";
+        when(keeperRepository.getDirections(uuid)).thenReturn(null);
+
+        List<String> actual = keeperService.getDirections(uuid);
+
+        assertEquals(Collections.emptyList(), actual);
+    }
+
+    @Test
+    public void getDirectionsIfKeepersReturnErrorNotCached() {
+        String uuid = "uuid-keepers-error";
+        List<String> expected = Collections.singletonList("teams");
+        when(keeperRepository.getDirections(uuid))
+                .thenThrow(new KeeperExchangeException(null, "Keepers service returns error"))
+                .thenReturn(expected);
+        try {
+            keeperService.getDirections(uuid);
+            fail("KeeperExchangeException expected");
+        } catch (KeeperExchangeException ex) {
+            assertEquals("Keepers service returns error", ex.getMessage());
+        }
+
+        List<String> actual = keeperService.getDirections(uuid);
+
+        assertEquals(expected, actual);
+        verify(keeperRepository, times(2)).getDirections(uuid);
+    }
+
+    @Test
+    public void getDirectionsConcurrentlyForSameKeeperRequestsKeepersOnce() throws Exception {
+        String uuid = "uuid-concurrent-keeper";
+        int callers = 8;
+        List<String> expected = Collections.singletonList("teams");
+        CountDownLatch release = new CountDownLatch(1);
+        when(keeperRepository.getDirections(uuid)).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return expected;
+        });
+        long coalescedBefore = coalescedRequests();
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        List<Future<List<String>>> results = new ArrayList<>();
+
+        for (int i = 0; i < callers; i++) {
+            results.add(executor.submit(() -> keeperService.getDirections(uuid)));
+        }
+        while (coalescedRequests() - coalescedBefore < callers - 1) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        for (Future<List<String>> result : results) {
+            assertEquals(expected, result.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+        verify(keeperRepository).getDirections(uuid);
+        verifyNoMoreInteractions(keeperRepository);
+    }
+
+    @Test
+    public void getDirectionsOfPreloadedKeeperDoesNotRequestKeepers() {
+        String uuid = "uuid-preloaded-keeper";
+        List<String> expected = Collections.singletonList("teams");
+        when(keeperRepository.getDirectionKeepers(teamsDirection))
+                .thenReturn(Collections.singletonList(new Keeper(uuid, expected)));
+        keeperService.preloadDirections();
+
+        List<String> actual = keeperService.getDirections(uuid);
+
+        assertEquals(expected, actual);
+        verify(keeperRepository).getDirectionKeepers(teamsDirection);
+        verifyNoMoreInteractions(keeperRepository);
+    }
+
+    @Test
+    public void preloadDirectionsIfKeepersReturnErrorKeepsPreviousKeepers() {
+        String uuid = "uuid-preloaded-before-error";
+        List<String> expected = Collections.singletonList("teams");
+        when(keeperRepository.getDirectionKeepers(teamsDirection))
+                .thenReturn(Collections.singletonList(new Keeper(uuid, expected)))
+                .thenThrow(new KeeperServiceUnavailableException("Keepers service is unavailable"));
+        keeperService.preloadDirections();
+        keeperService.preloadDirections();
+
+        List<String> actual = keeperService.getDirections(uuid);
+
+        assertEquals(expected, actual);
+        verify(keeperRepository, times(2)).getDirectionKeepers(teamsDirection);
+        verifyNoMoreInteractions(keeperRepository);
+    }
+
+    @Test
+    public void preloadDirectionsRemovesKeepersNotReturnedByKeepers() {
+        String uuid = "uuid-revoked-keeper";
+        when(keeperRepository.getDirectionKeepers(teamsDirection))
+                .thenReturn(Collections.singletonList(new Keeper(uuid, Collections.singletonList("teams"))))
+                .thenReturn(Collections.emptyList());
+        when(keeperRepository.getDirections(uuid)).thenReturn(Collections.emptyList());
+        keeperService.preloadDirections();
+        keeperService.preloadDirections();
+
+        List<String> actual = keeperService.getDirections(uuid);
+
+        assertEquals(Collections.emptyList(), actual);
+        verify(keeperRepository).getDirections(uuid);
+    }
+
+    private long coalescedRequests() {
+        return keeperService.metrics().stream()
+                .filter(metric -> metric.getName().equals("keepers.requests.coalesced"))
+                .findFirst()
+                .map(metric -> metric.getValue().longValue())
+                .orElse(0L);
+    }
+}
@@ -0,0 +1,85 @@
+package ua.com.juja.microservices.teams.service;
+
+import org.bson.types.ObjectId;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import ua.com.juja.microservices.integration.BaseIntegrationTest;
+import ua.com.juja.microservices.teams.dao.MembershipRepository;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.entity.Membership;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import javax.inject.Inject;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * @author Ivan Shapovalov
+ */
+@RunWith(SpringRunner.class)
+public class MembershipRepairerTest extends BaseIntegrationTest {
+
+    @Inject
+    private MembershipRepairer membershipRepairer;
+
+    @Inject
+    private TeamRepository teamRepository;
+
+    @Inject
+    private MembershipRepository membershipRepository;
+
+    @Inject
+    private MongoTemplate mongoTemplate;
+
+    @Value("${spring.data.mongodb.collection}")
+    private String mongoCollectionName;
+
+    @Value("${spring.data.mongodb.membershipCollection}")
+    private String membershipCollectionName;
+
+    @Before
+    public void setup() {
+        mongoTemplate.dropCollection(mongoCollectionName);
+        mongoTemplate.dropCollection(membershipCollectionName);
+    }
+
+    @Test
+    public void repairCreatesMissingAndDeactivatesOrphanMemberships() {
+        Team team = teamRepository.saveTeam(new Team("uuid-from",
+                new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4"))));
+        Team orphan = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid5", "uuid6", "uuid7", "uuid8")));
+        orphan.setId(new ObjectId(new Date(System.currentTimeMillis() - 3600000)).toHexString());
+        membershipRepository.reserveMembers(orphan, new Date());
+
+        int repaired = membershipRepairer.repair();
+
+        Date actualDate = new Date();
+        assertEquals(8, repaired);
+        assertEquals(team.getId(), membershipRepository.getActiveMembership("uuid3", actualDate).getTeamId());
+        assertNull(membershipRepository.getActiveMembership("uuid5", actualDate));
+        assertEquals(0, membershipRepairer.repair());
+    }
+
+    @Test
+    public void repairLeavesMembershipsOfTeamsBeingSaved() {
+        Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        team.setId(new ObjectId().toHexString());
+        membershipRepository.reserveMembers(team, new Date());
+
+        int repaired = membershipRepairer.repair();
+
+        Membership membership = membershipRepository.getActiveMembership("uuid1", new Date());
+        assertEquals(0, repaired);
+        assertEquals(team.getId(), membership.getTeamId());
+        assertEquals(Collections.emptyList(), teamRepository.getUserActiveTeams("uuid1", new Date()));
+    }
+}
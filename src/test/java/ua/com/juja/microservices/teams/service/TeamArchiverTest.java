@@ -0,0 +1,77 @@
+package ua.com.juja.microservices.teams.service;
+
+import com.lordofthejars.nosqlunit.annotation.UsingDataSet;
+import com.lordofthejars.nosqlunit.core.LoadStrategyEnum;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.com.juja.microservices.integration.BaseIntegrationTest;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+
+import javax.inject.Inject;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Ivan Shapovalov
+ */
+@RunWith(SpringRunner.class)
+public class TeamArchiverTest extends BaseIntegrationTest {
+
+    @Inject
+    private TeamArchiver teamArchiver;
+
+    @Inject
+    private TeamRepository teamRepository;
+
+    @Inject
+    private MongoTemplate mongoTemplate;
+
+    @Value("${spring.data.mongodb.collection}")
+    private String mongoCollectionName;
+
+    @Value("${spring.data.mongodb.archiveCollection}")
+    private String archiveCollectionName;
+
+    @Before
+    public void setup() {
+        mongoTemplate.dropCollection(archiveCollectionName);
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void archiveMovesAllExpiredTeamsInBatches() {
+        ReflectionTestUtils.setField(teamArchiver, "batchSize", 2);
+        try {
+            long archived = teamArchiver.archive();
+
+            assertEquals(3, archived);
+            assertEquals(2, mongoTemplate.getCollection(mongoCollectionName).count());
+            assertEquals(3, mongoTemplate.getCollection(archiveCollectionName).count());
+            assertEquals(0, teamArchiver.archive());
+        } finally {
+            ReflectionTestUtils.setField(teamArchiver, "batchSize", 500);
+        }
+    }
+
+    @Test
+    @UsingDataSet(locations = "/datasets/getAllActiveTeamsDataSet.json", loadStrategy = LoadStrategyEnum.CLEAN_INSERT)
+    public void archivedTeamsAreReturnedByQueriesAtOldDates() {
+        Date oldDate = Date.from(LocalDateTime.of(2017, 4, 10, 0, 0).atZone(ZoneId.systemDefault()).toInstant());
+        int beforeArchive = teamRepository.getAllActiveTeams(oldDate).size();
+
+        teamArchiver.archive();
+
+        assertEquals(5, beforeArchive);
+        assertEquals(5, teamRepository.getAllActiveTeams(oldDate).size());
+        assertEquals(2, teamRepository.getUserActiveTeams("uuid-in-one-team", oldDate).size());
+        assertEquals(2, teamRepository.getAllActiveTeams(new Date()).size());
+    }
+}
@@ -0,0 +1,127 @@
+package ua.com.juja.microservices.teams.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.junit4.SpringRunner;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.entity.Team;
+import ua.com.juja.microservices.teams.entity.TeamsPage;
+
+import javax.inject.Inject;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ivan Shapovalov
+ */
+@RunWith(SpringRunner.class)
+@WebMvcTest(TeamHistoryService.class)
+public class TeamHistoryServiceTest {
+
+    @Rule
+    final public ExpectedException expectedException = ExpectedException.none();
+
+    @Inject
+    private TeamHistoryService teamHistoryService;
+
+    @MockBean
+    private TeamRepository teamRepository;
+
+    @Test
+    public void getTeamsHistoryAtClosedMomentRequestsDBOnce() {
+        Date at = Date.from(LocalDate.now().minusDays(2).atStartOfDay(ZoneId.systemDefault()).toInstant());
+        Team team = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        Date end = new Date(at.getTime() + 1);
+        when(teamRepository.getTeamsActiveBetween("uuid1", at, end)).thenReturn(Collections.singletonList(team));
+
+        List<Team> first = teamHistoryService.getTeamsHistory("uuid1", at, null, null);
+        List<Team> second = teamHistoryService.getTeamsHistory("uuid1", at, null, null);
+
+        assertEquals(Collections.singletonList(team), first);
+        assertEquals(first, second);
+        verify(teamRepository).getTeamsActiveBetween("uuid1", at, end);
+        verifyNoMoreInteractions(teamRepository);
+    }
+
+    @Test
+    public void getTeamsHistoryAtMomentOfCurrentDayIsNotCached() {
+        Date at = Date.from(LocalDate.now().atStartOfDay(ZoneId.systemDefault()).toInstant());
+        Date end = new Date(at.getTime() + 1);
+        when(teamRepository.getTeamsActiveBetween("uuid1", at, end)).thenReturn(Collections.emptyList());
+
+        teamHistoryService.getTeamsHistory("uuid1", at, null, null);
+        teamHistoryService.getTeamsHistory("uuid1", at, null, null);
+
+        verify(teamRepository, times(2)).getTeamsActiveBetween("uuid1", at, end);
+    }
+
+    @Test
+    public void getTeamsHistoryOfOpenPeriodIsNotCached() {
+        Date from = new Date(System.currentTimeMillis() - 3_600_000);
+        Date to = new Date(System.currentTimeMillis() + 3_600_000);
+        when(teamRepository.getTeamsActiveBetween(null, from, to)).thenReturn(Collections.emptyList());
+
+        teamHistoryService.getTeamsHistory(null, null, from, to);
+        teamHistoryService.getTeamsHistory(null, null, from, to);
+
+        verify(teamRepository, times(2)).getTeamsActiveBetween(null, from, to);
+    }
+
+    @Test
+    public void getTeamsHistoryIfPeriodAndMomentTogetherThrowsException() {
+        Date now = new Date();
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Teams history Request must contain either 'at' or 'from' before 'to'");
+
+        teamHistoryService.getTeamsHistory(null, now, now, new Date(now.getTime() + 1));
+    }
+
+    @Test
+    public void getTeamsHistoryIfFromNotBeforeToThrowsException() {
+        Date now = new Date();
+        expectedException.expect(IllegalArgumentException.class);
+
+        teamHistoryService.getTeamsHistory("uuid1", null, now, now);
+    }
+
+    @Test
+    public void getUserTeamsTimelineReturnsTokenOfLastTeamOfPage() {
+        Team first = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        first.setId("58f4a7d8c9e77c1d9c6d0a01");
+        Team second = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid5", "uuid6", "uuid7")));
+        second.setId("58f4a7d8c9e77c1d9c6d0a02");
+        when(teamRepository.getUserTeamsTimeline("uuid1", null, null, 2)).thenReturn(Arrays.asList(first, second));
+        when(teamRepository.getUserTeamsTimeline("uuid1", first.getActivateDate(), first.getId(), 2))
+                .thenReturn(Collections.singletonList(second));
+
+        TeamsPage firstPage = teamHistoryService.getUserTeamsTimeline("uuid1", null, 1);
+        TeamsPage secondPage = teamHistoryService.getUserTeamsTimeline("uuid1", firstPage.getNextToken(), 1);
+
+        assertEquals(Collections.singletonList(first), firstPage.getTeams());
+        assertEquals(Collections.singletonList(second), secondPage.getTeams());
+        assertEquals(null, secondPage.getNextToken());
+    }
+
+    @Test
+    public void getUserTeamsTimelineIfTokenIncorrectThrowsException() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Page token 'incorrect' is incorrect");
+
+        teamHistoryService.getUserTeamsTimeline("uuid1", "incorrect", null);
+    }
+}
@@ -6,12 +6,22 @@ import org.junit.rules.ExpectedException;
 import org.junit.runner.RunWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
+import org.mockito.invocation.InvocationOnMock;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.junit4.SpringRunner;
-import ua.com.juja.microservices.teams.dao.impl.TeamRepository;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.com.juja.microservices.teams.dao.MembershipRepository;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.entity.ActivateTeamsRequest;
+import ua.com.juja.microservices.teams.entity.DeactivateTeamsRequest;
+import ua.com.juja.microservices.teams.entity.Membership;
 import ua.com.juja.microservices.teams.entity.Team;
+import ua.com.juja.microservices.teams.entity.TeamResult;
+import ua.com.juja.microservices.teams.entity.TeamsPage;
+import ua.com.juja.microservices.teams.entity.UserTeam;
+import ua.com.juja.microservices.teams.entity.UsersTeamsRequest;
 import ua.com.juja.microservices.teams.entity.impl.ActivateTeamRequest;
 import ua.com.juja.microservices.teams.entity.impl.DeactivateTeamRequest;
 import ua.com.juja.microservices.teams.exceptions.UserAlreadyInTeamException;
@@ -26,6 +36,9 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.core.Is.is;
@@ -34,6 +47,7 @@ import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyObject;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -56,12 +70,27 @@ public class TeamServiceTest {
     @MockBean
     private TeamRepository teamRepository;
 
+    @MockBean
+    private MembershipRepository membershipRepository;
+
     @MockBean
     private KeeperService keeperService;
 
+    @MockBean
+    private ActiveTeamsIndex activeTeamsIndex;
+
     @Value("${keepers.direction.teams}")
     private String teamsDirection;
 
+    @Value("${teams.getAllTeams.page.maxSize}")
+    private int maxPageSize;
+
+    @Value("${teams.usersTeams.maxSize}")
+    private int maxUsersTeamsSize;
+
+    @Value("${teams.bulk.maxSize}")
+    private int maxBulkSize;
+
     @Test
     public void activateTeamIfUserNotInAnotherTeamsExecutedCorrectly() {
         String from = "uuid-from";
@@ -82,7 +111,47 @@ public class TeamServiceTest {
         verify(teamRepository).saveTeam(captor.capture());
         assertEquals(expected.getMembers(), captor.getValue().getMembers());
         assertEquals(expected.getMembers(), actual.getMembers());
-        verifyNoMoreInteractions(teamRepository, keeperService);
+        verify(membershipRepository).reserveMembers(eq(captor.getValue()), any(Date.class));
+        verifyNoMoreInteractions(teamRepository, keeperService, membershipRepository);
+    }
+
+    @Test
+    public void activateTeamIfUserReservedByAnotherTeamThrowsException() {
+        String from = "uuid-from";
+        ActivateTeamRequest activateTeamRequest = new ActivateTeamRequest(from, new HashSet<>(
+                Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        when(keeperService.getDirections(from)).thenReturn(Collections.singletonList(teamsDirection));
+        when(teamRepository.checkUsersActiveTeams(eq(activateTeamRequest.getMembers()), any(Date.class)))
+                .thenReturn(Collections.emptyList());
+        when(membershipRepository.reserveMembers(any(Team.class), any(Date.class))).thenReturn("uuid2");
+        expectedException.expect(UserAlreadyInTeamException.class);
+        expectedException.expectMessage("User(s) '#uuid2#' exist(s) in another teams");
+
+        try {
+            teamService.activateTeam(activateTeamRequest);
+        } finally {
+            verify(teamRepository, never()).saveTeam(any(Team.class));
+        }
+    }
+
+    @Test
+    public void activateTeamIfSaveFailsReleasesMembers() {
+        String from = "uuid-from";
+        ActivateTeamRequest activateTeamRequest = new ActivateTeamRequest(from, new HashSet<>(
+                Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        when(keeperService.getDirections(from)).thenReturn(Collections.singletonList(teamsDirection));
+        when(teamRepository.checkUsersActiveTeams(eq(activateTeamRequest.getMembers()), any(Date.class)))
+                .thenReturn(Collections.emptyList());
+        when(teamRepository.saveTeam(any(Team.class))).thenThrow(new IllegalStateException("DB is unavailable"));
+        expectedException.expect(IllegalStateException.class);
+
+        try {
+            teamService.activateTeam(activateTeamRequest);
+        } finally {
+            ArgumentCaptor<Team> captor = ArgumentCaptor.forClass(Team.class);
+            verify(membershipRepository).reserveMembers(captor.capture(), any(Date.class));
+            verify(membershipRepository).releaseMembers(captor.getValue());
+        }
     }
 
     @Test
@@ -147,6 +216,21 @@ public class TeamServiceTest {
         teamService.activateTeam(activateTeamRequest);
     }
 
+    @Test
+    public void activateTeamIfUserNotKeeperAndUserExistsInAnotherTeamThrowsNotKeeperException() {
+        String from = "uuid-from";
+        ActivateTeamRequest activateTeamRequest = new ActivateTeamRequest(from,
+                new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        when(keeperService.getDirections(from)).thenReturn(Collections.emptyList());
+        when(teamRepository.checkUsersActiveTeams(eq(activateTeamRequest.getMembers()), any(Date.class)))
+                .thenReturn(Collections.singletonList("uuid1"));
+
+        expectedException.expect(UserNotTeamsKeeperException.class);
+        expectedException.expectMessage("User '#uuid-from#' have not permissions for that command");
+
+        teamService.activateTeam(activateTeamRequest);
+    }
+
     @Test
     public void deactivateTeamIfRequestIsNullThrowsException() {
         String from = "uuid-from";
@@ -214,7 +298,7 @@ public class TeamServiceTest {
         teams.add(team1);
         teams.add(team2);
         when(keeperService.getDirections(from)).thenReturn(Collections.singletonList(teamsDirection));
-        when(teamRepository.getUserActiveTeams(eq(uuid), any(Date.class))).thenReturn(teams);
+        when(teamRepository.deactivateUserActiveTeam(eq(uuid), any(Date.class))).thenReturn(teams);
         expectedException.expect(UserInSeveralTeamsException.class);
         expectedException.expectMessage(String.format("User with uuid '%s' is in several teams now", uuid));
 
@@ -229,7 +313,7 @@ public class TeamServiceTest {
 
         List<Team> teams = new ArrayList<>();
         when(keeperService.getDirections(from)).thenReturn(Collections.singletonList(teamsDirection));
-        when(teamRepository.getUserActiveTeams(eq(uuid), any(Date.class))).thenReturn(teams);
+        when(teamRepository.deactivateUserActiveTeam(eq(uuid), any(Date.class))).thenReturn(teams);
         expectedException.expect(UserNotInTeamException.class);
         expectedException.expectMessage(String.format("User with uuid '%s' not in team now", uuid));
 
@@ -245,17 +329,148 @@ public class TeamServiceTest {
         List<Team> teams = new ArrayList<>();
         teams.add(team);
         when(keeperService.getDirections(from)).thenReturn(Collections.singletonList(teamsDirection));
-        when(teamRepository.getUserActiveTeams(eq(uuid), any(Date.class))).thenReturn(teams);
-        when(teamRepository.saveTeam(team)).thenReturn(team);
+        when(teamRepository.deactivateUserActiveTeam(eq(uuid), any(Date.class))).thenReturn(teams);
 
-        teamService.deactivateTeam(deactivateTeamRequest);
+        Team actual = teamService.deactivateTeam(deactivateTeamRequest);
 
+        assertEquals(team, actual);
         verify(keeperService).getDirections(from);
-        verify(teamRepository).getUserActiveTeams(eq(uuid), any(Date.class));
-        verify(teamRepository).saveTeam(team);
+        verify(teamRepository).deactivateUserActiveTeam(eq(uuid), any(Date.class));
+        verify(membershipRepository).deactivateMembers(team);
         verifyNoMoreInteractions(teamRepository, keeperService);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void activateTeamsChecksKeeperAndMembersOnceAndGivesRepeatedMemberToFirstTeam() {
+        String from = "uuid-from";
+        ActivateTeamRequest first = new ActivateTeamRequest(from, new HashSet<>(
+                Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        ActivateTeamRequest repeated = new ActivateTeamRequest(from, new HashSet<>(
+                Arrays.asList("uuid4", "uuid5", "uuid6", "uuid7")));
+        ActivateTeamRequest inTeam = new ActivateTeamRequest(from, new HashSet<>(
+                Arrays.asList("uuid8", "uuid-in-team", "uuid10", "uuid11")));
+        when(keeperService.getDirections(from)).thenReturn(Collections.singletonList(teamsDirection));
+        when(teamRepository.checkUsersActiveTeams(any(Set.class), any(Date.class)))
+                .thenReturn(Collections.singletonList("uuid-in-team"));
+        when(membershipRepository.reserveMembers(any(List.class), any(Date.class))).thenReturn(Collections.emptyMap());
+        when(teamRepository.insertTeams(any(List.class))).thenAnswer(invocation -> invocation.getArgumentAt(0, List.class));
+
+        List<TeamResult> actual = teamService.activateTeams(
+                new ActivateTeamsRequest(Arrays.asList(first, repeated, inTeam)));
+
+        assertEquals(3, actual.size());
+        assertEquals(TeamResult.Status.SUCCESS, actual.get(0).getStatus());
+        assertEquals(first.getMembers(), actual.get(0).getTeam().getMembers());
+        assertEquals(TeamResult.failed("User(s) '#uuid4#' exist(s) in another teams"), actual.get(1));
+        assertEquals(TeamResult.failed("User(s) '#uuid-in-team#' exist(s) in another teams"), actual.get(2));
+        verify(keeperService).getDirections(from);
+        verify(teamRepository).checkUsersActiveTeams(any(Set.class), any(Date.class));
+        verify(teamRepository).insertTeams(any(List.class));
+        verifyNoMoreInteractions(teamRepository, keeperService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void activateTeamsIfKeeperHasNoPermissionsFailsOnlyHisRequests() {
+        ActivateTeamRequest notKeeper = new ActivateTeamRequest("uuid-not-keeper", new HashSet<>(
+                Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        ActivateTeamRequest keeper = new ActivateTeamRequest("uuid-from", new HashSet<>(
+                Arrays.asList("uuid5", "uuid6", "uuid7", "uuid8")));
+        when(keeperService.getDirections("uuid-not-keeper")).thenReturn(Collections.emptyList());
+        when(keeperService.getDirections("uuid-from")).thenReturn(Collections.singletonList(teamsDirection));
+        when(teamRepository.checkUsersActiveTeams(eq(keeper.getMembers()), any(Date.class)))
+                .thenReturn(Collections.emptyList());
+        when(membershipRepository.reserveMembers(any(List.class), any(Date.class))).thenReturn(Collections.emptyMap());
+        when(teamRepository.insertTeams(any(List.class))).thenAnswer(invocation -> invocation.getArgumentAt(0, List.class));
+
+        List<TeamResult> actual = teamService.activateTeams(new ActivateTeamsRequest(Arrays.asList(notKeeper, keeper)));
+
+        assertEquals(TeamResult.failed("User '#uuid-not-keeper#' have not permissions for that command"),
+                actual.get(0));
+        assertEquals(TeamResult.Status.SUCCESS, actual.get(1).getStatus());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void activateTeamsIfMemberReservedConcurrentlyFailsItsTeam() {
+        String from = "uuid-from";
+        ActivateTeamRequest request = new ActivateTeamRequest(from, new HashSet<>(
+                Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        when(keeperService.getDirections(from)).thenReturn(Collections.singletonList(teamsDirection));
+        when(teamRepository.checkUsersActiveTeams(eq(request.getMembers()), any(Date.class)))
+                .thenReturn(Collections.emptyList());
+        when(membershipRepository.reserveMembers(any(List.class), any(Date.class))).thenAnswer(invocation ->
+                Collections.singletonMap(((List<Team>) invocation.getArgumentAt(0, List.class)).get(0).getId(), "uuid3"));
+        when(teamRepository.insertTeams(any(List.class))).thenAnswer(invocation -> invocation.getArgumentAt(0, List.class));
+
+        List<TeamResult> actual = teamService.activateTeams(new ActivateTeamsRequest(Collections.singletonList(request)));
+
+        assertEquals(Collections.singletonList(TeamResult.failed("User(s) '#uuid3#' exist(s) in another teams")),
+                actual);
+        verify(teamRepository).insertTeams(Collections.emptyList());
+    }
+
+    @Test
+    public void activateTeamsIfRequestTooLargeThrowsException() {
+        List<ActivateTeamRequest> requests = Collections.nCopies(maxBulkSize + 1,
+                new ActivateTeamRequest("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4"))));
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(String.format("Activate teams Request must contain from 1 to '%s' requests",
+                maxBulkSize));
+
+        teamService.activateTeams(new ActivateTeamsRequest(requests));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void deactivateTeamsDeactivatesTeamOnceForUsersOfSameTeam() {
+        String from = "uuid-from";
+        Team team = new Team(from, new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        team.setId("team-id");
+        Team several1 = new Team(from, new HashSet<>(Arrays.asList("uuid-in-several-teams", "uuid5", "uuid6", "uuid7")));
+        Team several2 = new Team(from, new HashSet<>(Arrays.asList("uuid-in-several-teams", "uuid8", "uuid9", "uuid10")));
+        when(keeperService.getDirections(from)).thenReturn(Collections.singletonList(teamsDirection));
+        when(teamRepository.getUsersActiveTeams(any(Set.class), any(Date.class)))
+                .thenReturn(Arrays.asList(team, several1, several2));
+        when(teamRepository.deactivateTeams(eq(Collections.singletonList(team)), any(Date.class)))
+                .thenReturn(Collections.singletonList(team));
+
+        List<TeamResult> actual = teamService.deactivateTeams(new DeactivateTeamsRequest(Arrays.asList(
+                new DeactivateTeamRequest(from, "uuid1"),
+                new DeactivateTeamRequest(from, "uuid2"),
+                new DeactivateTeamRequest(from, "uuid-not-in-team"),
+                new DeactivateTeamRequest(from, "uuid-in-several-teams"))));
+
+        assertEquals(Arrays.asList(
+                TeamResult.success(team),
+                TeamResult.success(team),
+                TeamResult.failed("User with uuid 'uuid-not-in-team' not in team now"),
+                TeamResult.failed("User with uuid 'uuid-in-several-teams' is in several teams now")), actual);
+        verify(keeperService).getDirections(from);
+        verify(teamRepository).getUsersActiveTeams(any(Set.class), any(Date.class));
+        verify(teamRepository).deactivateTeams(eq(Collections.singletonList(team)), any(Date.class));
+        verify(membershipRepository).deactivateMembers(eq(Collections.singleton("team-id")), any(Date.class));
+        verifyNoMoreInteractions(teamRepository, keeperService, membershipRepository);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void deactivateTeamsIfTeamDeactivatedConcurrentlyFailsItsUsers() {
+        String from = "uuid-from";
+        Team team = new Team(from, new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        team.setId("team-id");
+        when(keeperService.getDirections(from)).thenReturn(Collections.singletonList(teamsDirection));
+        when(teamRepository.getUsersActiveTeams(any(Set.class), any(Date.class)))
+                .thenReturn(Collections.singletonList(team));
+        when(teamRepository.deactivateTeams(any(List.class), any(Date.class))).thenReturn(Collections.emptyList());
+
+        List<TeamResult> actual = teamService.deactivateTeams(new DeactivateTeamsRequest(
+                Collections.singletonList(new DeactivateTeamRequest(from, "uuid1"))));
+
+        assertEquals(Collections.singletonList(TeamResult.failed("User with uuid 'uuid1' not in team now")), actual);
+    }
+
     @Test
     public void getAllTeamsExecutedCorrectly() {
         String from="uuid-from";
@@ -271,4 +486,168 @@ public class TeamServiceTest {
         assertThat(actual, is(expected));
         verifyNoMoreInteractions(teamRepository);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getAllTeamsIfActiveTeamsIndexReadyDoesNotRequestRepository() {
+        String from = "uuid-from";
+        final Team team1 = new Team(from, new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        final List<Team> expected = Collections.singletonList(team1);
+        when(activeTeamsIndex.isReady()).thenReturn(true);
+        when(activeTeamsIndex.getAllActiveTeams(any(Date.class))).thenReturn(expected);
+
+        List<Team> actual = teamService.getAllActiveTeams();
+
+        verify(activeTeamsIndex).getAllActiveTeams(any(Date.class));
+        assertThat(actual, is(expected));
+        verifyNoMoreInteractions(teamRepository);
+    }
+
+    @Test
+    public void getUserActiveTeamIfActiveTeamsIndexReadyDoesNotRequestRepository() {
+        String uuid = "uuid1";
+        final Team expected = new Team("uuid-from", new HashSet<>(Arrays.asList(uuid, "uuid2", "uuid3", "uuid4")));
+        when(activeTeamsIndex.isReady()).thenReturn(true);
+        when(activeTeamsIndex.getUserActiveTeams(eq(uuid), any(Date.class)))
+                .thenReturn(Collections.singletonList(expected));
+
+        Team actual = teamService.getUserActiveTeam(uuid);
+
+        verify(activeTeamsIndex).getUserActiveTeams(eq(uuid), any(Date.class));
+        assertThat(actual, is(expected));
+        verifyNoMoreInteractions(teamRepository);
+    }
+
+    @Test
+    public void getUserActiveTeamIfMembershipLookupEnabledReadsMembershipAndTeamById() {
+        String uuid = "uuid1";
+        final Team expected = new Team("uuid-from", new HashSet<>(Arrays.asList(uuid, "uuid2", "uuid3", "uuid4")));
+        expected.setId("58c8f3e1a2b3c4d5e6f70001");
+        when(membershipRepository.getActiveMembership(eq(uuid), any(Date.class)))
+                .thenReturn(new Membership(uuid, expected));
+        when(teamRepository.getTeam(expected.getId())).thenReturn(expected);
+        ReflectionTestUtils.setField(teamService, "membershipLookup", true);
+        try {
+            Team actual = teamService.getUserActiveTeam(uuid);
+
+            assertThat(actual, is(expected));
+            verify(teamRepository).getTeam(expected.getId());
+            verifyNoMoreInteractions(teamRepository);
+        } finally {
+            ReflectionTestUtils.setField(teamService, "membershipLookup", false);
+        }
+    }
+
+    @Test
+    public void getUserActiveTeamIfMembershipLookupEnabledAndNoMembershipThrowsException() {
+        String uuid = "uuid1";
+        ReflectionTestUtils.setField(teamService, "membershipLookup", true);
+        expectedException.expect(UserNotInTeamException.class);
+        try {
+            teamService.getUserActiveTeam(uuid);
+        } finally {
+            ReflectionTestUtils.setField(teamService, "membershipLookup", false);
+            verifyNoMoreInteractions(teamRepository);
+        }
+    }
+
+    @Test
+    public void streamAllActiveTeamsPassesTeamsFromRepository() {
+        String from = "uuid-from";
+        final Team team1 = new Team(from, new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        final Team team2 = new Team(from, new HashSet<>(Arrays.asList("uuid5", "uuid6", "uuid7", "uuid8")));
+        final List<Team> expected = Arrays.asList(team1, team2);
+        when(teamRepository.streamAllActiveTeams(any(Date.class), any())).thenAnswer(invocation -> {
+            Consumer<Team> consumer = teamConsumer(invocation, 1);
+            expected.forEach(consumer);
+            return (long) expected.size();
+        });
+        List<Team> actual = new ArrayList<>();
+
+        long count = teamService.streamAllActiveTeams(actual::add);
+
+        verify(teamRepository).streamAllActiveTeams(any(Date.class), any());
+        verifyNoMoreInteractions(teamRepository);
+        assertEquals(2, count);
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    public void getActiveTeamsPageIfMoreTeamsExistReturnsNextToken() {
+        final Team team1 = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")));
+        team1.setId("58c8f3e1a2b3c4d5e6f70001");
+        final Team team2 = new Team("uuid-from", new HashSet<>(Arrays.asList("uuid5", "uuid6", "uuid7", "uuid8")));
+        team2.setId("58c8f3e1a2b3c4d5e6f70002");
+        when(teamRepository.getActiveTeamsPage(any(Date.class), eq(null), eq(2)))
+                .thenReturn(Arrays.asList(team1, team2));
+        when(teamRepository.getActiveTeamsPage(any(Date.class), eq(team1.getId()), eq(2)))
+                .thenReturn(Collections.singletonList(team2));
+
+        TeamsPage firstPage = teamService.getActiveTeamsPage(null, 1);
+        TeamsPage lastPage = teamService.getActiveTeamsPage(firstPage.getNextToken(), 1);
+
+        assertEquals(Collections.singletonList(team1), firstPage.getTeams());
+        assertEquals(Collections.singletonList(team2), lastPage.getTeams());
+        assertEquals(null, lastPage.getNextToken());
+    }
+
+    @Test
+    public void getActiveTeamsPageIfSizeTooBigUsesMaxPageSize() {
+        when(teamRepository.getActiveTeamsPage(any(Date.class), eq(null), eq(maxPageSize + 1)))
+                .thenReturn(Collections.emptyList());
+
+        TeamsPage actual = teamService.getActiveTeamsPage(null, maxPageSize * 10);
+
+        verify(teamRepository).getActiveTeamsPage(any(Date.class), eq(null), eq(maxPageSize + 1));
+        assertEquals(Collections.emptyList(), actual.getTeams());
+    }
+
+    @Test
+    public void getActiveTeamsPageIfTokenIncorrectThrowsException() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Page token 'incorrect' is incorrect");
+
+        teamService.getActiveTeamsPage("incorrect", 1);
+    }
+
+    @Test
+    public void getUsersActiveTeamsMarksUsersNotInTeamAndInSeveralTeams() {
+        final String uuidInTeam = "uuid-in-team";
+        final String uuidInSeveralTeams = "uuid-in-several-teams";
+        final String uuidNotInTeam = "uuid-not-in-team";
+        final Team team1 = new Team("uuid-from",
+                new HashSet<>(Arrays.asList(uuidInTeam, uuidInSeveralTeams, "uuid1", "uuid2")));
+        final Team team2 = new Team("uuid-from",
+                new HashSet<>(Arrays.asList(uuidInSeveralTeams, "uuid3", "uuid4", "uuid5")));
+        UsersTeamsRequest request = new UsersTeamsRequest(
+                new HashSet<>(Arrays.asList(uuidInTeam, uuidInSeveralTeams, uuidNotInTeam)));
+        when(teamRepository.getUsersActiveTeams(eq(request.getUuids()), any(Date.class)))
+                .thenReturn(Arrays.asList(team1, team2));
+
+        Map<String, UserTeam> actual = teamService.getUsersActiveTeams(request);
+
+        verify(teamRepository).getUsersActiveTeams(eq(request.getUuids()), any(Date.class));
+        verifyNoMoreInteractions(teamRepository);
+        assertEquals(3, actual.size());
+        assertEquals(UserTeam.inTeam(team1), actual.get(uuidInTeam));
+        assertEquals(UserTeam.inSeveralTeams(), actual.get(uuidInSeveralTeams));
+        assertEquals(UserTeam.notInTeam(), actual.get(uuidNotInTeam));
+    }
+
+    @Test
+    public void getUsersActiveTeamsIfTooManyUuidsThrowsException() {
+        Set<String> uuids = new HashSet<>();
+        for (int i = 0; i <= maxUsersTeamsSize; i++) {
+            uuids.add("uuid" + i);
+        }
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(String.format("Users teams Request must contain at most '%s' uuids",
+                maxUsersTeamsSize));
+
+        teamService.getUsersActiveTeams(new UsersTeamsRequest(uuids));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Consumer<Team> teamConsumer(InvocationOnMock invocation, int index) {
+        return invocation.getArgumentAt(index, Consumer.class);
+    }
+}
@@ -0,0 +1,107 @@
+package ua.com.juja.microservices.teams.service;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import ua.com.juja.microservices.teams.dao.TeamRepository;
+import ua.com.juja.microservices.teams.dao.TeamSavedEvent;
+import ua.com.juja.microservices.teams.entity.Team;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Ivan Shapovalov
+ */
+public class TeamsVersionTest {
+
+    private final TeamRepository teamRepository = mock(TeamRepository.class);
+    private final ActiveTeamsIndex activeTeamsIndex = mock(ActiveTeamsIndex.class);
+    private final TeamsVersion teamsVersion = new TeamsVersion();
+
+    @Before
+    public void setup() {
+        ReflectionTestUtils.setField(teamsVersion, "teamRepository", teamRepository);
+        ReflectionTestUtils.setField(teamsVersion, "activeTeamsIndex", activeTeamsIndex);
+        ReflectionTestUtils.setField(teamsVersion, "checkMs", 60000L);
+        when(teamRepository.getVersion()).thenReturn("1-1");
+    }
+
+    @Test
+    public void getETagIfNothingSavedReturnsSameETagAndReadsVersionOnce() {
+        assertEquals(teamsVersion.getETag(), teamsVersion.getETag());
+        assertEquals(teamsVersion.getLastModified(), teamsVersion.getLastModified());
+        verify(teamRepository, times(1)).getVersion();
+    }
+
+    @Test
+    public void onTeamSavedChangesETagAndLastModified() {
+        String eTagBefore = teamsVersion.getETag();
+        long lastModifiedBefore = teamsVersion.getLastModified();
+        when(teamRepository.getVersion()).thenReturn("1-2");
+
+        teamsVersion.onTeamSaved(new TeamSavedEvent(
+                new Team("uuid-from", new HashSet<>(Arrays.asList("uuid1", "uuid2", "uuid3", "uuid4")))));
+
+        assertNotEquals(eTagBefore, teamsVersion.getETag());
+        assertTrue(teamsVersion.getLastModified() >= lastModifiedBefore + 1000);
+        assertEquals(0, teamsVersion.getLastModified() % 1000);
+    }
+
+    @Test
+    public void getETagIfVersionChangedByOtherInstanceChangesETagAfterCheckInterval() {
+        ReflectionTestUtils.setField(teamsVersion, "checkMs", 0L);
+        String eTagBefore = teamsVersion.getETag();
+        when(teamRepository.getVersion()).thenReturn("1-2");
+
+        assertNotEquals(eTagBefore, teamsVersion.getETag());
+    }
+
+    @Test
+    public void getETagIfIndexIsReadySyncsIndexBeforeUsingItsVersion() {
+        ReflectionTestUtils.setField(teamsVersion, "checkMs", 0L);
+        when(activeTeamsIndex.isReady()).thenReturn(true);
+        when(activeTeamsIndex.getVersion()).thenReturn("1-1-0");
+        String eTagBefore = teamsVersion.getETag();
+        when(teamRepository.getVersion()).thenReturn("1-2");
+        when(activeTeamsIndex.getVersion()).thenReturn("1-2-0");
+
+        String actual = teamsVersion.getETag();
+
+        assertNotEquals(eTagBefore, actual);
+        assertTrue(actual.startsWith("\"1-2-0-"));
+        InOrder inOrder = inOrder(activeTeamsIndex);
+        inOrder.verify(activeTeamsIndex).sync("1-2");
+        inOrder.verify(activeTeamsIndex).getVersion();
+    }
+
+    @Test
+    public void getETagIfIndexIsReadyAndVersionIsNotReadReturnsVersionOfIndex() {
+        ReflectionTestUtils.setField(teamsVersion, "checkMs", 0L);
+        when(activeTeamsIndex.isReady()).thenReturn(true);
+        when(activeTeamsIndex.getVersion()).thenReturn("1-1-0");
+        String eTagBefore = teamsVersion.getETag();
+        when(teamRepository.getVersion()).thenThrow(new IllegalStateException("DB is unavailable"));
+
+        assertEquals(eTagBefore, teamsVersion.getETag());
+    }
+
+    @Test
+    public void getETagIfVersionIsNotReadReturnsNewETag() {
+        ReflectionTestUtils.setField(teamsVersion, "checkMs", 0L);
+        String eTagBefore = teamsVersion.getETag();
+        when(teamRepository.getVersion()).thenThrow(new IllegalStateException("DB is unavailable"));
+
+        assertNotEquals(eTagBefore, teamsVersion.getETag());
+    }
+}